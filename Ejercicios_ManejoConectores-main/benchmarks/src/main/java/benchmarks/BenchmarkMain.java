@@ -0,0 +1,27 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar: plain JMH, except that results are written as JSON to
+ * target/jmh-results.json unless {@code -rf}/{@code -rff} say otherwise, so runs from two
+ * releases can be compared.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.addAll(0, List.of("-rf", "json"));
+        }
+        if (!options.contains("-rff")) {
+            options.addAll(0, List.of("-rff", "target/jmh-results.json"));
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,94 @@
+package biblioteca;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Conexion.ConnectionPool;
+
+/**
+ * The JDBC paths of the managers through the shared pool, against H2 in PostgreSQL mode as
+ * an embedded stand-in. Absolute numbers are H2's; the point is spotting regressions in
+ * what the managers do around the driver (pooling, caching, paging, transactions).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JdbcBenchmark {
+    private static final int LIBROS = 10_000;
+
+    @Param({ "true", "false" })
+    boolean cache;
+
+    private ConnectionPool pool;
+    private ManageLibros manageLibros;
+    private ManageAlquileres manageAlquileres;
+    private final AtomicLong ids = new AtomicLong();
+
+    @Setup
+    public void setUp() throws Exception {
+        pool = new ConnectionPool("jdbc:h2:mem:bench" + System.nanoTime() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                "sa", "", 2, 8, 5000, 60000, 2);
+        manageLibros = new ManageLibros();
+        manageLibros.openConnection(pool);
+        if (!cache) {
+            manageLibros.configureCache(0, 0);
+        }
+        manageAlquileres = new ManageAlquileres(manageLibros);
+        manageAlquileres.openConnection(pool);
+        int[] next = { 0 };
+        manageLibros.importLibros(() -> next[0] < LIBROS
+                ? new RowSource.Row<>(next[0], new Libro(id(next[0]), "Titulo " + next[0], "Autor", "978-0000000000", next[0]++ % 3 != 0))
+                : null, BulkInsert.DEFAULT_BATCH_SIZE, false, new BulkResult());
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+    }
+
+    private static String id(int i) {
+        return String.format("B%07d", i);
+    }
+
+    @Benchmark
+    public Libro getLibroById() {
+        return manageLibros.getLibroById(id(ThreadLocalRandom.current().nextInt(LIBROS)));
+    }
+
+    @Benchmark
+    public Page<Libro> pageOfDisponibles() {
+        return manageLibros.getLibrosDisponibles(new PageRequest(100, id(ThreadLocalRandom.current().nextInt(LIBROS)), 0));
+    }
+
+    @Benchmark
+    public boolean updateLibro() {
+        String id = id(ThreadLocalRandom.current().nextInt(LIBROS));
+        return manageLibros.updateLibro(id, new Libro(id, "Editado", "Autor", "978-0000000000", true));
+    }
+
+    @Benchmark
+    public boolean rentAndReturn() {
+        String alquiler = "A" + ids.incrementAndGet();
+        String libro = id(1 + 3 * ThreadLocalRandom.current().nextInt((LIBROS - 1) / 3));
+        manageAlquileres.registrarAlquiler(new Alquiler(alquiler, "S001", libro, "2025-03-01", null, "activo"));
+        manageAlquileres.devolverLibro(alquiler);
+        return manageAlquileres.deleteAlquiler(alquiler);
+    }
+}
@@ -0,0 +1,79 @@
+package biblioteca;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** ManageLibros/ManageAlquileres CRUD against the in-memory store. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ManagerCrudBenchmark {
+
+    @Param({ "1000", "100000" })
+    int libros;
+
+    private ManageLibros manageLibros;
+    private ManageAlquileres manageAlquileres;
+    private final AtomicLong ids = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        manageLibros = new ManageLibros();
+        manageAlquileres = new ManageAlquileres(manageLibros);
+        for (int i = 0; i < libros; i++) {
+            manageLibros.addLibro(new Libro(id(i), "Titulo " + i, "Autor", "978-0000000000", i % 3 != 0));
+        }
+    }
+
+    private static String id(int i) {
+        return String.format("B%07d", i);
+    }
+
+    @Benchmark
+    public Libro getLibroById() {
+        return manageLibros.getLibroById(id(ThreadLocalRandom.current().nextInt(libros)));
+    }
+
+    @Benchmark
+    public boolean addAndDeleteLibro() {
+        String id = "N" + ids.incrementAndGet();
+        manageLibros.addLibro(new Libro(id, "Nuevo", "Autor", "978-0000000000", true));
+        return manageLibros.deleteLibro(id);
+    }
+
+    @Benchmark
+    public boolean updateLibro() {
+        String id = id(ThreadLocalRandom.current().nextInt(libros));
+        return manageLibros.updateLibro(id, new Libro(id, "Editado", "Autor", "978-0000000000", true));
+    }
+
+    @Benchmark
+    public Page<Libro> pageOfDisponibles() {
+        return manageLibros.getLibrosDisponibles(new PageRequest(50, id(ThreadLocalRandom.current().nextInt(libros)), 0));
+    }
+
+    @Benchmark
+    public boolean rentAndReturn() {
+        String alquiler = "A" + ids.incrementAndGet();
+        String libro = id(1 + 3 * ThreadLocalRandom.current().nextInt((libros - 1) / 3));
+        manageAlquileres.registrarAlquiler(new Alquiler(alquiler, "S001", libro, "2025-03-01", null, "activo"));
+        manageAlquileres.devolverLibro(alquiler);
+        return manageAlquileres.deleteAlquiler(alquiler);
+    }
+}
@@ -0,0 +1,101 @@
+package biblioteca;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A full scan of alquileres mapped the old way (every column looked up by name on every
+ * row, dates read as text) against {@link RowMappers.Alquileres}. H2 in PostgreSQL mode,
+ * as in {@link JdbcBenchmark}; the scan itself is the same in both, so the difference is
+ * the mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class RowMapperBenchmark {
+    private static final String SELECT = "SELECT * FROM alquileres";
+
+    @Param({ "1000000" })
+    int rows;
+
+    private Connection connection;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:rows" + System.nanoTime() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE alquileres (id VARCHAR(20) PRIMARY KEY, socio_id VARCHAR(20), libro_id VARCHAR(20), "
+                    + "fecha_alquiler DATE, fecha_devolucion DATE, estado VARCHAR(20))");
+        }
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO alquileres VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                ps.setString(1, "A" + i);
+                ps.setString(2, "S" + i % 1000);
+                ps.setString(3, "L" + i % 10_000);
+                ps.setObject(4, start.plusDays(i % 2000));
+                ps.setObject(5, i % 4 == 0 ? null : start.plusDays(i % 2000 + 14));
+                ps.setString(6, i % 4 == 0 ? "activo" : "devuelto");
+                ps.addBatch();
+                if (i % 1000 == 999) ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public void byName(Blackhole bh) throws SQLException {
+        scan(bh, rs -> rs2 -> new Alquiler(
+                rs2.getString("id"),
+                rs2.getString("socio_id"),
+                rs2.getString("libro_id"),
+                rs2.getString("fecha_alquiler"),
+                rs2.getString("fecha_devolucion"),
+                rs2.getString("estado")));
+    }
+
+    @Benchmark
+    public void resolvedIndexes(Blackhole bh) throws SQLException {
+        scan(bh, RowMappers.Alquileres::new);
+    }
+
+    private void scan(Blackhole bh, PagedQuery.Columns<Alquiler> columns) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(SELECT)) {
+            ps.setFetchSize(PagedQuery.FETCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                PagedQuery.Mapper<Alquiler> mapper = columns.resolve(rs);
+                while (rs.next()) {
+                    bh.consume(mapper.map(rs));
+                }
+            }
+        }
+    }
+}
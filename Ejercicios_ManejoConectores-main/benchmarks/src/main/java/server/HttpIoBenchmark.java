@@ -0,0 +1,64 @@
+package server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Request body reading and response writing as the handlers do it, over in-memory streams. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpIoBenchmark {
+
+    @Param({ "128", "65536" })
+    int bodySize;
+
+    private byte[] body;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder("{\"accion\":\"alquilar\",\"datos\":\"");
+        while (sb.length() < bodySize - 2) {
+            sb.append('x');
+        }
+        json = sb.append("\"}").toString();
+        body = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** A command body read the old way: the whole body into a String, then a tree. */
+    @Benchmark
+    public String commandTree() throws IOException {
+        String text = new String(new FakeExchange("PUT", "/api/alquileres/A1", body).getRequestBody().readAllBytes(),
+                StandardCharsets.UTF_8);
+        return WebServer.MAPPER.readTree(text).get("accion").asText();
+    }
+
+    /** The same field pulled from the token stream, as {@code PUT /api/alquileres/{id}} does now. */
+    @Benchmark
+    public String commandField() throws IOException {
+        return RequestBody.field(new FakeExchange("PUT", "/api/alquileres/A1", body), "accion");
+    }
+
+    @Benchmark
+    public byte[] writeJson() throws IOException {
+        FakeExchange exchange = new FakeExchange("GET", "/api/libros", new byte[0]);
+        WebServer.writeJson(exchange, 200, json);
+        return exchange.response();
+    }
+}
@@ -0,0 +1,100 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import biblioteca.Alquiler;
+import biblioteca.Libro;
+
+/**
+ * Serialising list responses with the server's own mapper: the whole list at once versus
+ * row by row through the entity's {@link JsonCodec#rows(Format)} writer, which is what the list
+ * endpoints do. The {@code *Reflective} pair is the same row-by-row loop with a plain
+ * mapper and an untyped writer, as the server did before the codecs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+    private static final ObjectMapper PLAIN = new ObjectMapper();
+    private static final ObjectWriter UNTYPED = PLAIN.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    @Param({ "10", "1000", "100000" })
+    int rows;
+
+    private ArrayList<Libro> libros;
+    private ArrayList<Alquiler> alquileres;
+
+    @Setup
+    public void setUp() {
+        libros = new ArrayList<>(rows);
+        alquileres = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            libros.add(new Libro("L" + i, "Titulo del libro " + i, "Autor " + i, "978-84-0000-" + i, i % 2 == 0));
+            alquileres.add(new Alquiler("A" + i, "S" + i % 100, "L" + i, "2025-03-01", i % 2 == 0 ? null : "2025-03-15",
+                    i % 2 == 0 ? "activo" : "devuelto"));
+        }
+    }
+
+    @Benchmark
+    public byte[] librosAsArray() throws IOException {
+        return WebServer.MAPPER.writeValueAsBytes(libros);
+    }
+
+    @Benchmark
+    public byte[] alquileresAsArray() throws IOException {
+        return WebServer.MAPPER.writeValueAsBytes(alquileres);
+    }
+
+    @Benchmark
+    public void librosStreamed() throws IOException {
+        stream(libros, JsonCodec.of(Libro.class).rows(Format.JSON));
+    }
+
+    @Benchmark
+    public void alquileresStreamed() throws IOException {
+        stream(alquileres, JsonCodec.of(Alquiler.class).rows(Format.JSON));
+    }
+
+    @Benchmark
+    public void librosReflective() throws IOException {
+        stream(libros, UNTYPED);
+    }
+
+    @Benchmark
+    public void alquileresReflective() throws IOException {
+        stream(alquileres, UNTYPED);
+    }
+
+    private static void stream(ArrayList<?> list, ObjectWriter writer) throws IOException {
+        try (JsonGenerator gen = writer.getFactory().createGenerator(OutputStream.nullOutputStream())) {
+            gen.writeStartArray();
+            for (Object row : list) {
+                writer.writeValue(gen, row);
+            }
+            gen.writeEndArray();
+        }
+    }
+}
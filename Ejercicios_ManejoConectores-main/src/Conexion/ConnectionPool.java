@@ -0,0 +1,359 @@
+package Conexion;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import metrics.Histogram;
+import metrics.Metrics;
+
+/**
+ * Bounded JDBC connection pool shared by all the managers.
+ *
+ * Connections are handed out as proxies: calling {@code close()} returns the
+ * physical connection to the pool instead of closing it. Idle connections are
+ * validated on borrow and evicted after {@code idleTimeoutMs} while the pool
+ * stays above {@code minSize}.
+ *
+ * Time spent waiting for a connection goes to {@link Metrics#POOL_WAIT}, and statements
+ * created through a borrowed connection record their execution time per SQL text in
+ * {@link Metrics#query}.
+ *
+ * Each physical connection keeps up to {@code statementCacheSize} prepared statements by
+ * SQL text (see {@link StatementCache}); 0 turns the cache off. With PostgreSQL,
+ * {@code prepareThreshold} is passed to the driver: the number of executions of one
+ * statement after which it becomes a named server-side statement (-1 keeps the driver's 5).
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMs;
+    private final long idleTimeoutMs;
+    private final int validationTimeoutSec;
+    private final int statementCacheSize;
+    private final int prepareThreshold;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+            long acquireTimeoutMs, long idleTimeoutMs, int validationTimeoutSec) throws SQLException {
+        this(url, user, password, minSize, maxSize, acquireTimeoutMs, idleTimeoutMs, validationTimeoutSec,
+                DEFAULT_STATEMENT_CACHE_SIZE, -1);
+    }
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+            long acquireTimeoutMs, long idleTimeoutMs, int validationTimeoutSec,
+            int statementCacheSize, int prepareThreshold) throws SQLException {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Tamaño de pool inválido: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.statementCacheSize = statementCacheSize;
+        this.prepareThreshold = prepareThreshold;
+        this.permits = new Semaphore(maxSize, true);
+
+        try {
+            for (int i = 0; i < minSize; i++) {
+                idle.addLast(newPhysical());
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMs / 2);
+        evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Builds a pool from the {@code db.pool.*} keys of {@code config/server.properties}.
+     */
+    public static ConnectionPool fromProperties(String url, String user, String password, Properties p) throws SQLException {
+        int min = Integer.parseInt(p.getProperty("db.pool.min", "2"));
+        int max = Integer.parseInt(p.getProperty("db.pool.max", "10"));
+        long acquireTimeout = Long.parseLong(p.getProperty("db.pool.acquireTimeoutMs", "5000"));
+        long idleTimeout = Long.parseLong(p.getProperty("db.pool.idleTimeoutMs", "300000"));
+        int validationTimeout = Integer.parseInt(p.getProperty("db.pool.validationTimeoutSec", "2"));
+        int statementCache = Integer.parseInt(p.getProperty("db.pool.statementCacheSize", String.valueOf(DEFAULT_STATEMENT_CACHE_SIZE)));
+        int prepareThreshold = Integer.parseInt(p.getProperty("db.prepareThreshold", "-1"));
+        return new ConnectionPool(url, user, password, min, max, acquireTimeout, idleTimeout, validationTimeout,
+                statementCache, prepareThreshold);
+    }
+
+    /**
+     * Borrows a connection, waiting at most {@code acquireTimeoutMs} for a free slot.
+     * The returned connection must be closed to give it back to the pool.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) throw new SQLException("El pool de conexiones está cerrado");
+        long start = System.nanoTime();
+        try {
+            boolean acquired = permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+            Metrics.POOL_WAIT.record(System.nanoTime() - start);
+            if (!acquired) {
+                Metrics.POOL_TIMEOUTS.increment();
+                throw new SQLTimeoutException("Timeout esperando una conexión libre (" + acquireTimeoutMs + " ms)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando una conexión", e);
+        }
+
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (isValid(pc)) return pc.borrow();
+                discard(pc);
+            }
+            return newPhysical().borrow();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getTotalCount() {
+        return total.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (evictor != null) evictor.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            discard(pc);
+        }
+    }
+
+    private PooledConnection newPhysical() throws SQLException {
+        Properties info = new Properties();
+        if (user != null) info.setProperty("user", user);
+        if (password != null) info.setProperty("password", password);
+        // other drivers may reject properties they do not know
+        if (prepareThreshold >= 0 && url.startsWith("jdbc:postgresql:")) {
+            info.setProperty("prepareThreshold", String.valueOf(prepareThreshold));
+        }
+        Connection physical = DriverManager.getConnection(url, info);
+        total.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private boolean isValid(PooledConnection pc) {
+        try {
+            return pc.physical.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pc) {
+        total.decrementAndGet();
+        if (pc.statements != null) pc.statements.close();
+        try {
+            pc.physical.close();
+        } catch (SQLException e) {
+            // la conexión ya estaba rota, no hay nada que hacer
+        }
+    }
+
+    private void giveBack(PooledConnection pc) {
+        try {
+            if (closed || pc.physical.isClosed()) {
+                discard(pc);
+                return;
+            }
+            if (pc.statements != null) pc.statements.checkInAll();
+            if (!pc.physical.getAutoCommit()) {
+                pc.physical.rollback();
+                pc.physical.setAutoCommit(true);
+            }
+            pc.lastUsed = System.currentTimeMillis();
+            idle.addFirst(pc);
+        } catch (SQLException e) {
+            discard(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** Idle connections are pushed to the head, so the oldest ones sit at the tail. */
+    private void evictIdle() {
+        long limit = System.currentTimeMillis() - idleTimeoutMs;
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && total.get() > minSize) {
+            PooledConnection pc = it.next();
+            if (pc.lastUsed >= limit) break;
+            if (idle.removeLastOccurrence(pc)) discard(pc);
+        }
+    }
+
+    private final class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statements;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = statementCacheSize > 0 ? new StatementCache(physical, statementCacheSize) : null;
+        }
+
+        Connection borrow() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Handle(this));
+        }
+    }
+
+    /** Per-borrow handle: once closed it no longer reaches the physical connection. */
+    private final class Handle implements InvocationHandler {
+        private PooledConnection pc;
+
+        Handle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (pc != null) {
+                    PooledConnection returned = pc;
+                    pc = null;
+                    giveBack(returned);
+                }
+                return null;
+            }
+            if (name.equals("isClosed")) return pc == null;
+            if (pc == null) throw new SQLException("La conexión ya fue devuelta al pool");
+            if (name.equals("prepareStatement") && args.length == 1 && pc.statements != null) {
+                Timed timed = new Timed(null, Metrics.query((String) args[0]), pc.statements);
+                StatementCache.Entry entry = pc.statements.checkOut((String) args[0], timed);
+                if (entry != null) {
+                    timed.entry = entry;
+                    return Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                            new Class<?>[] { method.getReturnType() }, timed);
+                }
+            }
+            try {
+                Object result = method.invoke(pc.physical, args);
+                if (result instanceof Statement) {
+                    // prepareStatement/prepareCall fix the SQL now, createStatement gets it per execute
+                    Histogram shape = name.startsWith("prepare") ? Metrics.query((String) args[0]) : null;
+                    return Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                            new Class<?>[] { method.getReturnType() }, new Timed((Statement) result, shape, null));
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Statement wrapper that times every {@code execute*} call. For a statement lent by the
+     * {@link StatementCache}, {@code close()} gives it back instead.
+     */
+    private static final class Timed implements InvocationHandler {
+        private final Statement statement;
+        private final Histogram shape;
+        private final StatementCache cache;
+        private StatementCache.Entry entry;
+
+        Timed(Statement statement, Histogram shape, StatementCache cache) {
+            this.statement = statement;
+            this.shape = shape;
+            this.cache = cache;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (entry != null) return invokeCached(method, args);
+            Histogram histogram = null;
+            if (method.getName().startsWith("execute")) {
+                histogram = shape != null ? shape
+                        : args != null && args.length > 0 && args[0] instanceof String ? Metrics.query((String) args[0]) : null;
+            }
+            long start = System.nanoTime();
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (histogram != null) histogram.record(System.nanoTime() - start);
+            }
+        }
+
+        private Object invokeCached(Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            boolean lent = entry.isLentTo(this);
+            if (name.equals("close")) {
+                cache.checkIn(entry, this);
+                return null;
+            }
+            if (name.equals("isClosed")) return !lent;
+            if (!lent) throw new SQLException("El statement ya fue cerrado");
+            if (method.getDeclaringClass() == Statement.class && (name.startsWith("set") || name.equals("closeOnCompletion"))) {
+                entry.changed(name);
+            }
+            boolean execute = name.startsWith("execute");
+            long start = System.nanoTime();
+            try {
+                Object result = method.invoke(entry.statement, args);
+                if (result instanceof ResultSet) entry.opened((ResultSet) result);
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (execute) shape.record(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package Conexion;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import metrics.Metrics;
+
+/**
+ * The prepared statements of one physical connection, by SQL text, least recently used first.
+ *
+ * A manager that prepares its SQL constant gets the statement it used last time, with its
+ * parameters cleared; closing it puts it back instead of closing it. Besides saving the
+ * round of object creation, this is what lets the PostgreSQL driver count executions of
+ * the same statement and switch it to a named server-side statement after
+ * {@code prepareThreshold} of them, so the hot queries are parsed and planned once per
+ * connection. Beyond {@code maxSize} texts the least recently used idle statement is closed.
+ *
+ * A statement is lent to one caller at a time: preparing the same text again before closing
+ * it gives an uncached statement. Fetch size, max rows and query timeout are put back on
+ * return; a caller that changes any other statement setting gets it closed on return.
+ */
+final class StatementCache {
+    private final Connection physical;
+    private final int maxSize;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(Connection physical, int maxSize) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+    }
+
+    /** The cached statement for {@code sql}, lent to {@code owner}; null when it is already lent. */
+    synchronized Entry checkOut(String sql, Object owner) throws SQLException {
+        Entry entry = entries.get(sql);
+        if (entry != null) {
+            if (entry.owner != null) {
+                Metrics.STATEMENT_CACHE_MISSES.increment();
+                return null;
+            }
+            Metrics.STATEMENT_CACHE_HITS.increment();
+            entry.owner = owner;
+            return entry;
+        }
+        Metrics.STATEMENT_CACHE_MISSES.increment();
+        entry = new Entry(sql, physical.prepareStatement(sql));
+        entry.owner = owner;
+        entries.put(sql, entry);
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxSize && eldest.hasNext()) {
+            Entry e = eldest.next();
+            if (e.owner != null) continue;
+            eldest.remove();
+            Metrics.STATEMENT_CACHE_EVICTIONS.increment();
+            closeQuietly(e);
+        }
+        return entry;
+    }
+
+    /** Takes a statement back from {@code owner}: reset for the next caller, or closed if it cannot be. */
+    synchronized void checkIn(Entry entry, Object owner) {
+        if (entry.owner != owner || owner == null) return;
+        entry.owner = null;
+        if (!entry.reusable || entries.get(entry.sql) != entry) {
+            entries.remove(entry.sql, entry);
+            closeQuietly(entry);
+            return;
+        }
+        try {
+            entry.reset();
+        } catch (SQLException e) {
+            entries.remove(entry.sql, entry);
+            closeQuietly(entry);
+        }
+    }
+
+    /** Called when the connection goes back to the pool: statements left open count as closed. */
+    synchronized void checkInAll() {
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            checkIn(entry, entry.owner);
+        }
+    }
+
+    /** Closes every statement, before the connection itself is closed. */
+    synchronized void close() {
+        for (Entry entry : entries.values()) closeQuietly(entry);
+        entries.clear();
+    }
+
+    private static void closeQuietly(Entry entry) {
+        try {
+            entry.statement.close();
+        } catch (SQLException e) {
+            // la conexión ya estaba rota
+        }
+    }
+
+    static final class Entry {
+        final String sql;
+        final PreparedStatement statement;
+        private final int fetchSize;
+        private final int maxRows;
+        private final int queryTimeout;
+        private final List<ResultSet> results = new ArrayList<>(1);
+        private volatile Object owner;
+        private boolean settingsChanged;
+        private boolean reusable = true;
+
+        Entry(String sql, PreparedStatement statement) throws SQLException {
+            this.sql = sql;
+            this.statement = statement;
+            this.fetchSize = statement.getFetchSize();
+            this.maxRows = statement.getMaxRows();
+            this.queryTimeout = statement.getQueryTimeout();
+        }
+
+        boolean isLentTo(Object owner) {
+            return this.owner == owner;
+        }
+
+        /** A statement setting called by the borrower. */
+        void changed(String setter) {
+            if (setter.equals("setFetchSize") || setter.equals("setMaxRows") || setter.equals("setQueryTimeout")) {
+                settingsChanged = true;
+            } else {
+                reusable = false;
+            }
+        }
+
+        /** A result set the borrower got, closed on return if it has not closed it. */
+        void opened(ResultSet resultSet) {
+            results.add(resultSet);
+        }
+
+        private void reset() throws SQLException {
+            for (ResultSet rs : results) rs.close();
+            results.clear();
+            statement.clearParameters();
+            statement.clearBatch();
+            statement.clearWarnings();
+            if (settingsChanged) {
+                statement.setFetchSize(fetchSize);
+                statement.setMaxRows(maxRows);
+                statement.setQueryTimeout(queryTimeout);
+                settingsChanged = false;
+            }
+        }
+    }
+}
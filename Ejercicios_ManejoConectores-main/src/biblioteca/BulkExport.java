@@ -0,0 +1,37 @@
+package biblioteca;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.postgresql.PGConnection;
+
+import Conexion.ConnectionPool;
+
+/**
+ * Export counterpart of {@link BulkInsert}: hands a whole table to PostgreSQL's
+ * {@code COPY ... TO STDOUT}, which writes straight into the given stream without any row
+ * being built in the JVM.
+ */
+public final class BulkExport {
+
+    private BulkExport() {
+    }
+
+    /**
+     * Runs {@code copySql} into {@code out}. Returns false, having written nothing, when the
+     * pool is not PostgreSQL so the caller can stream the rows itself.
+     */
+    public static boolean copyOut(ConnectionPool pool, String copySql, OutputStream out) throws IOException {
+        try (Connection connection = pool.getConnection()) {
+            if (!connection.isWrapperFor(PGConnection.class)) {
+                return false;
+            }
+            connection.unwrap(PGConnection.class).getCopyAPI().copyOut(copySql, out);
+            return true;
+        } catch (SQLException e) {
+            throw new IOException("COPY TO failed", e);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package biblioteca;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import Conexion.ConnectionPool;
+
+/**
+ * Bulk loading shared by the managers. Rows are pulled from a {@link RowSource} as they are
+ * parsed, so the whole input is never held in memory.
+ *
+ * {@link #batch} sends each chunk with addBatch/executeBatch in one transaction. When a chunk
+ * fails it is rolled back and replayed row by row, so good rows still go in and each bad one
+ * is reported with its line. {@link #copy} streams everything through PostgreSQL's COPY, which
+ * is faster but all-or-nothing: a database error rejects the whole load, and every row of it
+ * is counted as failed.
+ */
+public final class BulkInsert {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    @FunctionalInterface
+    public interface Binder<T> {
+        void bind(PreparedStatement ps, T row) throws SQLException;
+    }
+
+    private BulkInsert() {
+    }
+
+    /** In-memory import: a row is rejected when its id is already in {@code store}. */
+    public static <T> BulkResult into(MemoryStore<T> store, RowSource<T> source, BulkResult result) throws IOException {
+        RowSource.Row<T> row;
+        while ((row = source.next()) != null) {
+            if (store.insert(row.getValue())) {
+                result.imported(1);
+            } else {
+                result.failed(row.getLine(), "duplicate id");
+            }
+        }
+        return result;
+    }
+
+    public static <T> BulkResult batch(ConnectionPool pool, String insert, Binder<T> binder, RowSource<T> source,
+                                       int batchSize, BulkResult result) throws IOException {
+        List<RowSource.Row<T>> chunk = new ArrayList<>(batchSize);
+        RowSource.Row<T> row;
+        while ((row = source.next()) != null) {
+            chunk.add(row);
+            if (chunk.size() >= batchSize) {
+                flush(pool, insert, binder, chunk, result);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            flush(pool, insert, binder, chunk, result);
+        }
+        return result;
+    }
+
+    private static <T> void flush(ConnectionPool pool, String insert, Binder<T> binder,
+                                  List<RowSource.Row<T>> chunk, BulkResult result) {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(insert)) {
+                for (RowSource.Row<T> row : chunk) {
+                    binder.bind(ps, row.getValue());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                connection.commit();
+                result.imported(chunk.size());
+                return;
+            } catch (SQLException e) {
+                connection.rollback();
+            }
+            connection.setAutoCommit(true);
+            try (PreparedStatement ps = connection.prepareStatement(insert)) {
+                for (RowSource.Row<T> row : chunk) {
+                    try {
+                        ps.clearParameters();
+                        binder.bind(ps, row.getValue());
+                        ps.executeUpdate();
+                        result.imported(1);
+                    } catch (SQLException e) {
+                        result.failed(row.getLine(), e.getMessage());
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            for (RowSource.Row<T> row : chunk) {
+                result.failed(row.getLine(), e.getMessage());
+            }
+        }
+    }
+
+    /** True when the pool's connections are PostgreSQL ones, so {@link #copy} can be used. */
+    public static boolean supportsCopy(ConnectionPool pool) {
+        try (Connection connection = pool.getConnection()) {
+            return connection.isWrapperFor(PGConnection.class);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Streams the rows into {@code copySql} ({@code COPY t (cols) FROM STDIN WITH (FORMAT csv)}),
+     * {@code columns} giving each row's values in the same order.
+     */
+    public static <T> BulkResult copy(ConnectionPool pool, String copySql, Function<T, Object[]> columns,
+                                      RowSource<T> source, BulkResult result) throws IOException {
+        long rows = 0;
+        long firstLine = 0;
+        try (Connection connection = pool.getConnection()) {
+            CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql);
+            try {
+                StringBuilder buffer = new StringBuilder(COPY_BUFFER + 1024);
+                RowSource.Row<T> row;
+                while ((row = source.next()) != null) {
+                    appendCsv(buffer, columns.apply(row.getValue()));
+                    if (rows++ == 0) firstLine = row.getLine();
+                    if (buffer.length() >= COPY_BUFFER) {
+                        write(copy, buffer);
+                    }
+                }
+                write(copy, buffer);
+                copy.endCopy();
+                result.imported(rows);
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            // nothing of the load went in: every row fails, those not read yet included
+            RowSource.Row<T> row;
+            while ((row = source.next()) != null) {
+                if (rows++ == 0) firstLine = row.getLine();
+            }
+            result.rejected(rows, firstLine, "COPY rejected: " + e.getMessage());
+        }
+        return result;
+    }
+
+    private static void write(CopyIn copy, StringBuilder buffer) throws SQLException {
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    /** One CSV record: nulls stay unquoted so COPY reads them as NULL, everything else is quoted. */
+    static void appendCsv(StringBuilder out, Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) out.append(',');
+            if (values[i] == null) continue;
+            String value = values[i].toString();
+            out.append('"');
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '"') out.append('"');
+                out.append(c);
+            }
+            out.append('"');
+        }
+        out.append('\n');
+    }
+}
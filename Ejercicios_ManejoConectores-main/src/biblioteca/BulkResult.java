@@ -0,0 +1,82 @@
+package biblioteca;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import: how many rows went in, which ones did not and why, and the
+ * throughput. Only the first {@link #MAX_ERRORS} errors are kept, {@code failed} counts all.
+ */
+public class BulkResult {
+    public static final int MAX_ERRORS = 100;
+
+    private final long start = System.nanoTime();
+    private long imported;
+    private long failed;
+    private long elapsedNanos;
+    private final List<RowError> errors = new ArrayList<>();
+
+    public synchronized void imported(long rows) {
+        imported += rows;
+    }
+
+    public synchronized void failed(long line, String error) {
+        failed++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(new RowError(line, error));
+        }
+    }
+
+    /** {@code rows} rows that failed together, reported as one error at {@code line}. */
+    public synchronized void rejected(long rows, long line, String error) {
+        if (rows == 0) return;
+        failed += rows;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(new RowError(line, error));
+        }
+    }
+
+    /** Stops the clock; the figures below are final after this. */
+    public synchronized BulkResult finish() {
+        elapsedNanos = System.nanoTime() - start;
+        return this;
+    }
+
+    public synchronized long getImported() {
+        return imported;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    public synchronized List<RowError> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    public synchronized long getElapsedMs() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public synchronized long getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : Math.round(imported * 1e9 / elapsedNanos);
+    }
+
+    public static class RowError {
+        private final long line;
+        private final String error;
+
+        public RowError(long line, String error) {
+            this.line = line;
+            this.error = error;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
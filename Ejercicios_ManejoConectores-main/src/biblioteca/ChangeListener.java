@@ -0,0 +1,16 @@
+package biblioteca;
+
+import java.util.Map;
+
+/**
+ * Told about rentals, returns and libro availability once they are committed, so the server
+ * can push them to clients instead of having them poll the lists. Called on the thread that
+ * made the change: implementations must not block.
+ */
+@FunctionalInterface
+public interface ChangeListener {
+    ChangeListener NONE = (type, data) -> { };
+
+    /** {@code type} is like {@code alquiler.registrado}; {@code data} holds the ids involved. */
+    void changed(String type, Map<String, Object> data);
+}
@@ -0,0 +1,113 @@
+package biblioteca;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded read-through cache for by-id lookups, with LRU eviction and a time-to-live.
+ *
+ * Cached instances are shared between callers and must be treated as read-only; the
+ * managers never mutate a stored entity, they replace it. Every invalidation bumps a
+ * generation counter so a load that raced with a write does not store the stale row.
+ */
+public class EntityCache<V> {
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final long DEFAULT_TTL_MS = 60_000;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Cached<V>> map;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long generation = 0;
+
+    public EntityCache(int maxSize, long ttlMs) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.map = new LinkedHashMap<String, Cached<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached<V>> eldest) {
+                if (size() > EntityCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** Returns the cached value or loads it; null results are not cached. */
+    public V getOrLoad(String key, Supplier<V> loader) {
+        if (maxSize <= 0) return loader.get();
+        long gen;
+        synchronized (this) {
+            V cached = lookup(key);
+            if (cached != null) return cached;
+            gen = generation;
+        }
+        V loaded = loader.get();
+        if (loaded != null) {
+            synchronized (this) {
+                if (gen == generation) {
+                    map.put(key, new Cached<>(loaded, System.nanoTime() + ttlNanos));
+                }
+            }
+        }
+        return loaded;
+    }
+
+    public synchronized void invalidate(String key) {
+        generation++;
+        map.remove(key);
+    }
+
+    public synchronized void clear() {
+        generation++;
+        map.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    private V lookup(String key) {
+        Cached<V> e = map.get(key);
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        if (System.nanoTime() - e.expiresAt > 0) {
+            map.remove(key);
+            evictions.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return e.value;
+    }
+
+    private static final class Cached<V> {
+        final V value;
+        final long expiresAt;
+
+        Cached(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,174 +1,201 @@
 package biblioteca;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
 
-public class ManageAlquileres {
-    private Connection connection;
-    private PreparedStatement ps;
-    private ResultSet resultSet;
-    private boolean useDatabase = false;
-    private ArrayList<Alquiler> alquileres;
-    private ManageLibros manageLibros = new ManageLibros();
+import Conexion.ConnectionPool;
+
+/**
+ * Data access for alquileres. Safe to share between handler threads: every call borrows
+ * its own connection and statement, and the in-memory fallback is a {@link MemoryStore}
+ * indexed by socio, libro and estado.
+ *
+ * Renting and returning change both the rental and the libro's availability. In the database
+ * each one is a single transaction that locks the row it depends on with SELECT ... FOR UPDATE,
+ * so two concurrent rentals of one libro cannot both succeed; serialization failures and
+ * deadlocks are retried a few times with a short random backoff.
+ */
+public class ManageAlquileres implements Repository<Alquiler> {
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS alquileres (" +
+            "id VARCHAR(36) PRIMARY KEY, " +
+            "socio_id VARCHAR(36), " +
+            "libro_id VARCHAR(36), " +
+            "fecha_alquiler DATE, " +
+            "fecha_devolucion DATE, " +
+            "estado VARCHAR(20))";
+    private static final String[] CREATE_INDEXES = {
+            "CREATE INDEX IF NOT EXISTS idx_alquileres_socio_estado ON alquileres (socio_id, estado)",
+            "CREATE INDEX IF NOT EXISTS idx_alquileres_libro_fecha ON alquileres (libro_id, fecha_alquiler)"
+    };
+    private static final String SELECT_ALL = "SELECT * FROM alquileres";
+    private static final String SELECT_BY_ESTADO = "SELECT * FROM alquileres WHERE estado = ?";
+    private static final String SELECT_BY_ID = "SELECT * FROM alquileres WHERE id = ?";
+    private static final String SELECT_BY_SOCIO = "SELECT * FROM alquileres WHERE socio_id = ?";
+    private static final String SELECT_BY_LIBRO = "SELECT * FROM alquileres WHERE libro_id = ?";
+    private static final String INSERT = "INSERT INTO alquileres (id, socio_id, libro_id, fecha_alquiler, fecha_devolucion, estado) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_DEVOLUCION = "UPDATE alquileres SET estado = 'devuelto', fecha_devolucion = ? WHERE id = ?";
+    private static final String LOCK_ALQUILER_ACTIVO = "SELECT libro_id FROM alquileres WHERE id = ? AND estado = 'activo' FOR UPDATE";
+    private static final String LOCK_LIBRO = "SELECT disponible FROM libros WHERE id = ? FOR UPDATE";
+    private static final String UPDATE_LIBRO_DISPONIBLE = "UPDATE libros SET disponible = ? WHERE id = ?";
+    private static final String DELETE = "DELETE FROM alquileres WHERE id = ?";
+    private static final String COPY_OUT = "COPY (SELECT id, socio_id AS \"socioId\", libro_id AS \"libroId\", fecha_alquiler AS \"fechaAlquiler\", "
+            + "fecha_devolucion AS \"fechaDevolucion\", estado FROM alquileres ORDER BY id) TO STDOUT WITH (FORMAT csv, HEADER)";
+
+    private static final String SOCIO = "socio";
+    private static final String LIBRO = "libro";
+    private static final String ESTADO = "estado";
+    private static final String ACTIVO = "activo";
+    static final int MAX_INTENTOS = 5;
+
+    private volatile ConnectionPool pool;
+    private volatile boolean useDatabase = false;
+    private final MemoryStore<Alquiler> alquileres = new MemoryStore<>(Alquiler::getId)
+            .withIndex(SOCIO, Alquiler::getSocioId)
+            .withIndex(LIBRO, Alquiler::getLibroId)
+            .withIndex(ESTADO, Alquiler::getEstado);
+    private final ManageLibros manageLibros;
+    private final LongAdder reintentos = new LongAdder();
+    private final TableVersion version = new TableVersion();
+    private volatile ChangeListener listener = ChangeListener.NONE;
 
     public ManageAlquileres() {
-        alquileres = new ArrayList<>();
-        alquileres.add(new Alquiler("A001", "S001", "L002", "2025-02-01", null, "activo"));
-        alquileres.add(new Alquiler("A002", "S002", "L003", "2025-02-03", null, "activo"));
-        alquileres.add(new Alquiler("A003", "S003", "L005", "2025-02-05", null, "activo"));
-        alquileres.add(new Alquiler("A004", "S001", "L001", "2025-01-20", "2025-02-05", "devuelto"));
-    }
-
-    public void openConnection(String bd, String host, String user, String password) {
-        try {
-            String url = String.format("jdbc:postgresql://%s:5432/%s", host, bd);
-            this.connection = DriverManager.getConnection(url, user, password);
-            useDatabase = true;
-            System.out.println("✅ ManageAlquileres: Conectado a BD");
-            initDB();
-        } catch (SQLException e) {
-            useDatabase = false;
-            System.out.println("⚠️ ManageAlquileres: Usando almacenamiento en memoria");
-        }
+        this(new ManageLibros());
+    }
+
+    /**
+     * Uses {@code manageLibros} to keep libro availability in step with rentals; pass the
+     * instance the libros endpoints use so its availability index and cache stay current.
+     */
+    public ManageAlquileres(ManageLibros manageLibros) {
+        this.manageLibros = manageLibros;
+        alquileres.insert(new Alquiler("A001", "S001", "L002", "2025-02-01", null, "activo"));
+        alquileres.insert(new Alquiler("A002", "S002", "L003", "2025-02-03", null, "activo"));
+        alquileres.insert(new Alquiler("A003", "S003", "L005", "2025-02-05", null, "activo"));
+        alquileres.insert(new Alquiler("A004", "S001", "L001", "2025-01-20", "2025-02-05", "devuelto"));
+    }
+
+    public void openConnection(ConnectionPool pool) {
+        this.pool = pool;
+        useDatabase = true;
+        System.out.println("✅ ManageAlquileres: Conectado a BD");
+        initDB();
+        version.bump();
+    }
+
+    /**
+     * Changes with every write to alquileres. Renting or returning also changes the
+     * libros version, since it changes disponible.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Receives {@code alquiler.registrado}, {@code alquiler.devuelto} and
+     * {@code alquiler.eliminado}; availability changes come from {@link ManageLibros}.
+     */
+    public void setChangeListener(ChangeListener listener) {
+        this.listener = listener;
     }
 
     private void initDB() {
-        try {
-            String createTable = "CREATE TABLE IF NOT EXISTS alquileres (" +
-                    "id VARCHAR(36) PRIMARY KEY, " +
-                    "socio_id VARCHAR(36), " +
-                    "libro_id VARCHAR(36), " +
-                    "fecha_alquiler DATE, " +
-                    "fecha_devolucion DATE, " +
-                    "estado VARCHAR(20))";
-            ps = connection.prepareStatement(createTable);
-            ps.executeUpdate();
+        try (Connection connection = pool.getConnection()) {
+            try (PreparedStatement ps = connection.prepareStatement(CREATE_TABLE)) {
+                ps.executeUpdate();
+            }
+            for (String index : CREATE_INDEXES) {
+                try (PreparedStatement ps = connection.prepareStatement(index)) {
+                    ps.executeUpdate();
+                }
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
     public ArrayList<Alquiler> getAllAlquileres() {
+        return getAllAlquileres(PageRequest.ALL).getItems();
+    }
+
+    public Page<Alquiler> getAllAlquileres(PageRequest page) {
         if (!useDatabase) {
-            return new ArrayList<>(alquileres);
+            return alquileres.page(page);
         }
+        return PagedQuery.collect(pool, SELECT_ALL, false, PagedQuery.NO_PARAMS, page,
+                RowMappers.Alquileres::new, Alquiler::getId);
+    }
 
-        ArrayList<Alquiler> lista = new ArrayList<>();
-        try {
-            String query = "SELECT * FROM alquileres";
-            ps = connection.prepareStatement(query);
-            resultSet = ps.executeQuery();
-            while (resultSet.next()) {
-                Alquiler a = new Alquiler(
-                        resultSet.getString("id"),
-                        resultSet.getString("socio_id"),
-                        resultSet.getString("libro_id"),
-                        resultSet.getString("fecha_alquiler"),
-                        resultSet.getString("fecha_devolucion"),
-                        resultSet.getString("estado")
-                );
-                lista.add(a);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+    /** Streams a page of alquileres to {@code sink} and returns the cursor of the next page. */
+    public String streamAllAlquileres(PageRequest page, RowConsumer<Alquiler> sink) throws IOException {
+        if (!useDatabase) {
+            return alquileres.page(page).forEach(sink);
         }
-        return lista;
+        return PagedQuery.streamOrFail(pool, SELECT_ALL, false, PagedQuery.NO_PARAMS, page,
+                RowMappers.Alquileres::new, Alquiler::getId, sink);
     }
 
     public ArrayList<Alquiler> getAlquileresActivos() {
-        if (!useDatabase) {
-            ArrayList<Alquiler> activos = new ArrayList<>();
-            for (Alquiler alquiler : alquileres) {
-                if ("activo".equals(alquiler.getEstado())) {
-                    activos.add(alquiler);
-                }
-            }
-            return activos;
-        }
+        return getAlquileresActivos(PageRequest.ALL).getItems();
+    }
 
-        ArrayList<Alquiler> lista = new ArrayList<>();
-        try {
-            String query = "SELECT * FROM alquileres WHERE estado = 'activo'";
-            ps = connection.prepareStatement(query);
-            resultSet = ps.executeQuery();
-            while (resultSet.next()) {
-                Alquiler a = new Alquiler(
-                        resultSet.getString("id"),
-                        resultSet.getString("socio_id"),
-                        resultSet.getString("libro_id"),
-                        resultSet.getString("fecha_alquiler"),
-                        resultSet.getString("fecha_devolucion"),
-                        resultSet.getString("estado")
-                );
-                lista.add(a);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return lista;
+    public Page<Alquiler> getAlquileresActivos(PageRequest page) {
+        return getAlquileresPorEstado(ACTIVO, page);
+    }
+
+    public String streamAlquileresActivos(PageRequest page, RowConsumer<Alquiler> sink) throws IOException {
+        return streamAlquileresPorEstado(ACTIVO, page, sink);
     }
 
     public ArrayList<Alquiler> getHistorialAlquileres() {
-        if (!useDatabase) {
-            ArrayList<Alquiler> historial = new ArrayList<>();
-            for (Alquiler alquiler : alquileres) {
-                if ("devuelto".equals(alquiler.getEstado())) {
-                    historial.add(alquiler);
-                }
-            }
-            return historial;
-        }
+        return getHistorialAlquileres(PageRequest.ALL).getItems();
+    }
 
-        ArrayList<Alquiler> lista = new ArrayList<>();
-        try {
-            String query = "SELECT * FROM alquileres WHERE estado = 'devuelto'";
-            ps = connection.prepareStatement(query);
-            resultSet = ps.executeQuery();
-            while (resultSet.next()) {
-                Alquiler a = new Alquiler(
-                        resultSet.getString("id"),
-                        resultSet.getString("socio_id"),
-                        resultSet.getString("libro_id"),
-                        resultSet.getString("fecha_alquiler"),
-                        resultSet.getString("fecha_devolucion"),
-                        resultSet.getString("estado")
-                );
-                lista.add(a);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return lista;
+    public Page<Alquiler> getHistorialAlquileres(PageRequest page) {
+        return getAlquileresPorEstado("devuelto", page);
+    }
+
+    public String streamHistorialAlquileres(PageRequest page, RowConsumer<Alquiler> sink) throws IOException {
+        return streamAlquileresPorEstado("devuelto", page, sink);
+    }
+
+    private Page<Alquiler> getAlquileresPorEstado(String estado, PageRequest page) {
+        return getAlquileresPor(ESTADO, SELECT_BY_ESTADO, estado, page);
+    }
+
+    private String streamAlquileresPorEstado(String estado, PageRequest page, RowConsumer<Alquiler> sink) throws IOException {
+        return streamAlquileresPor(ESTADO, SELECT_BY_ESTADO, estado, page, sink);
+    }
+
+    private static PagedQuery.Binder bindValue(String value) {
+        return ps -> {
+            ps.setString(1, value);
+            return 2;
+        };
     }
 
     public Alquiler getAlquilerById(String id) {
         if (!useDatabase) {
-            return alquileres.stream()
-                    .filter(a -> a.getId().equals(id))
-                    .findFirst()
-                    .orElse(null);
+            return alquileres.get(id);
         }
 
-        try {
-            String query = "SELECT * FROM alquileres WHERE id = ?";
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(SELECT_BY_ID)) {
             ps.setString(1, id);
-            resultSet = ps.executeQuery();
-            if (resultSet.next()) {
-                return new Alquiler(
-                        resultSet.getString("id"),
-                        resultSet.getString("socio_id"),
-                        resultSet.getString("libro_id"),
-                        resultSet.getString("fecha_alquiler"),
-                        resultSet.getString("fecha_devolucion"),
-                        resultSet.getString("estado")
-                );
+            try (ResultSet resultSet = ps.executeQuery()) {
+                if (resultSet.next()) {
+                    return new RowMappers.Alquileres(resultSet).map(resultSet);
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -176,109 +203,288 @@ public class ManageAlquileres {
         return null;
     }
 
+    /**
+     * Registers the rental. An active rental also takes the libro, and fails when the libro
+     * does not exist or is already rented; a rental recorded as already returned does not.
+     */
     public boolean registrarAlquiler(Alquiler alquiler) {
+        boolean activo = ACTIVO.equals(alquiler.getEstado());
+        String libroId = alquiler.getLibroId();
+
         if (!useDatabase) {
-            if (getAlquilerById(alquiler.getId()) != null) {
+            if (alquileres.get(alquiler.getId()) != null) {
                 return false;
             }
-            boolean resultado = alquileres.add(alquiler);
-            if (resultado) {
-                manageLibros.setDisponibilidad(alquiler.getLibroId(), false);
+            if (activo && !manageLibros.cambiarDisponibilidad(libroId, true, false)) {
+                return false;
             }
-            return resultado;
+            if (!alquileres.insert(alquiler)) {
+                if (activo) manageLibros.setDisponibilidad(libroId, true);
+                return false;
+            }
+            registrado(alquiler);
+            return true;
         }
 
-        try {
-            String query = "INSERT INTO alquileres (id, socio_id, libro_id, fecha_alquiler, fecha_devolucion, estado) VALUES (?, ?, ?, ?, ?, ?)";
-            ps = connection.prepareStatement(query);
-            ps.setString(1, alquiler.getId());
-            ps.setString(2, alquiler.getSocioId());
-            ps.setString(3, alquiler.getLibroId());
-            ps.setString(4, alquiler.getFechaAlquiler());
-            ps.setString(5, alquiler.getFechaDevolucion());
-            ps.setString(6, alquiler.getEstado());
-            int result = ps.executeUpdate();
-            return result > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
+        boolean ok = enTransaccion(connection -> {
+            if (activo) {
+                try (PreparedStatement ps = connection.prepareStatement(LOCK_LIBRO)) {
+                    ps.setString(1, libroId);
+                    try (ResultSet resultSet = ps.executeQuery()) {
+                        if (!resultSet.next() || !resultSet.getBoolean(1)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            try (PreparedStatement ps = connection.prepareStatement(INSERT)) {
+                ps.setString(1, alquiler.getId());
+                ps.setString(2, alquiler.getSocioId());
+                ps.setString(3, libroId);
+                ps.setString(4, alquiler.getFechaAlquiler());
+                ps.setString(5, alquiler.getFechaDevolucion());
+                ps.setString(6, alquiler.getEstado());
+                ps.executeUpdate();
+            }
+            if (activo) {
+                actualizarDisponible(connection, libroId, false);
+            }
+            return true;
+        });
+        if (ok && activo) {
+            manageLibros.getCache().invalidate(libroId);
+            manageLibros.disponibilidadCambiada(libroId, false);
         }
+        if (ok) registrado(alquiler);
+        return ok;
     }
 
-    public boolean devolverLibro(String alquilerId) {
-        Alquiler alquiler = getAlquilerById(alquilerId);
-        if (alquiler == null) return false;
+    /**
+     * Loads many alquileres at once. Each row goes through {@link #registrarAlquiler}, so active
+     * rentals still lock and take their libro; this table is not batched or copied.
+     */
+    public BulkResult importAlquileres(RowSource<Alquiler> source, BulkResult result) throws IOException {
+        RowSource.Row<Alquiler> row;
+        while ((row = source.next()) != null) {
+            if (registrarAlquiler(row.getValue())) {
+                result.imported(1);
+            } else {
+                result.failed(row.getLine(), "rejected: duplicate id, or libro missing or not available");
+            }
+        }
+        return result;
+    }
 
+    /**
+     * Writes every alquiler as CSV, header included, through COPY TO STDOUT. Returns false
+     * without writing when there is no PostgreSQL database behind the manager.
+     */
+    public boolean copyAlquileresCsv(OutputStream out) throws IOException {
+        return useDatabase && BulkExport.copyOut(pool, COPY_OUT, out);
+    }
+
+    /** Marks an active rental as returned and frees its libro; false if it is not active. */
+    public boolean devolverLibro(String alquilerId) {
         String fechaDev = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
-        
+
         if (!useDatabase) {
-            alquiler.setEstado("devuelto");
-            alquiler.setFechaDevolucion(fechaDev);
-            manageLibros.setDisponibilidad(alquiler.getLibroId(), true);
+            Alquiler devuelto = alquileres.update(alquilerId, a -> !ACTIVO.equals(a.getEstado()) ? null
+                    : new Alquiler(a.getId(), a.getSocioId(), a.getLibroId(), a.getFechaAlquiler(), fechaDev, "devuelto"));
+            if (devuelto == null) return false;
+            devuelto(alquilerId, devuelto.getLibroId(), fechaDev);
+            manageLibros.setDisponibilidad(devuelto.getLibroId(), true);
             return true;
         }
 
-        try {
-            String query = "UPDATE alquileres SET estado = 'devuelto', fecha_devolucion = ? WHERE id = ?";
-            ps = connection.prepareStatement(query);
-            ps.setString(1, fechaDev);
-            ps.setString(2, alquilerId);
-            int result = ps.executeUpdate();
-            return result > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
+        String[] libroId = new String[1];
+        boolean ok = enTransaccion(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(LOCK_ALQUILER_ACTIVO)) {
+                ps.setString(1, alquilerId);
+                try (ResultSet resultSet = ps.executeQuery()) {
+                    if (!resultSet.next()) {
+                        return false;
+                    }
+                    libroId[0] = resultSet.getString(1);
+                }
+            }
+            try (PreparedStatement ps = connection.prepareStatement(UPDATE_DEVOLUCION)) {
+                ps.setString(1, fechaDev);
+                ps.setString(2, alquilerId);
+                ps.executeUpdate();
+            }
+            actualizarDisponible(connection, libroId[0], true);
+            return true;
+        });
+        if (ok) {
+            devuelto(alquilerId, libroId[0], fechaDev);
+            manageLibros.getCache().invalidate(libroId[0]);
+            if (libroId[0] != null) manageLibros.disponibilidadCambiada(libroId[0], true);
+        }
+        return ok;
+    }
+
+    private void registrado(Alquiler alquiler) {
+        version.bump();
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", alquiler.getId());
+        if (alquiler.getSocioId() != null) data.put("socioId", alquiler.getSocioId());
+        if (alquiler.getLibroId() != null) data.put("libroId", alquiler.getLibroId());
+        if (alquiler.getEstado() != null) data.put("estado", alquiler.getEstado());
+        listener.changed("alquiler.registrado", data);
+    }
+
+    private void devuelto(String id, String libroId, String fechaDevolucion) {
+        version.bump();
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", id);
+        if (libroId != null) data.put("libroId", libroId);
+        data.put("fechaDevolucion", fechaDevolucion);
+        listener.changed("alquiler.devuelto", data);
+    }
+
+    /** Number of rent/return transactions retried after a serialization failure or deadlock. */
+    public long getReintentos() {
+        return reintentos.sum();
+    }
+
+    private static void actualizarDisponible(Connection connection, String libroId, boolean disponible) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(UPDATE_LIBRO_DISPONIBLE)) {
+            ps.setBoolean(1, disponible);
+            ps.setString(2, libroId);
+            ps.executeUpdate();
         }
     }
 
+    private interface Transaccion {
+        /** Runs inside the transaction; returning false rolls it back. */
+        boolean run(Connection connection) throws SQLException;
+    }
+
+    private boolean enTransaccion(Transaccion tx) {
+        for (int intento = 1; ; intento++) {
+            try (Connection connection = pool.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    boolean ok = tx.run(connection);
+                    if (ok) connection.commit();
+                    else connection.rollback();
+                    return ok;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                if (intento >= MAX_INTENTOS || !esReintentable(e)) {
+                    e.printStackTrace();
+                    return false;
+                }
+                reintentos.increment();
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextInt(1, 10 * intento));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+
+    /** 40001 serialization_failure, 40P01 deadlock_detected. */
+    private static boolean esReintentable(SQLException e) {
+        String state = e.getSQLState();
+        return "40001".equals(state) || "40P01".equals(state);
+    }
+
     public boolean deleteAlquiler(String id) {
         if (!useDatabase) {
-            return alquileres.removeIf(a -> a.getId().equals(id));
+            return eliminado(id, alquileres.remove(id) != null);
         }
 
-        try {
-            String query = "DELETE FROM alquileres WHERE id = ?";
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(DELETE)) {
             ps.setString(1, id);
-            int result = ps.executeUpdate();
-            return result > 0;
+            return eliminado(id, ps.executeUpdate() > 0);
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
 
+    private boolean eliminado(String id, boolean ok) {
+        if (ok) {
+            version.bump();
+            listener.changed("alquiler.eliminado", Map.of("id", id));
+        }
+        return ok;
+    }
+
     public ArrayList<Alquiler> getAlquileresDelSocio(String socioId) {
+        return getAlquileresDelSocio(socioId, PageRequest.ALL).getItems();
+    }
+
+    public Page<Alquiler> getAlquileresDelSocio(String socioId, PageRequest page) {
+        return getAlquileresPor(SOCIO, SELECT_BY_SOCIO, socioId, page);
+    }
+
+    public String streamAlquileresDelSocio(String socioId, PageRequest page, RowConsumer<Alquiler> sink) throws IOException {
+        return streamAlquileresPor(SOCIO, SELECT_BY_SOCIO, socioId, page, sink);
+    }
+
+    public ArrayList<Alquiler> getAlquileresDelLibro(String libroId) {
+        return getAlquileresDelLibro(libroId, PageRequest.ALL).getItems();
+    }
+
+    public Page<Alquiler> getAlquileresDelLibro(String libroId, PageRequest page) {
+        return getAlquileresPor(LIBRO, SELECT_BY_LIBRO, libroId, page);
+    }
+
+    public String streamAlquileresDelLibro(String libroId, PageRequest page, RowConsumer<Alquiler> sink) throws IOException {
+        return streamAlquileresPor(LIBRO, SELECT_BY_LIBRO, libroId, page, sink);
+    }
+
+    /** Lookup through the in-memory index {@code index} or the matching SQL {@code select}. */
+    private Page<Alquiler> getAlquileresPor(String index, String select, String value, PageRequest page) {
         if (!useDatabase) {
-            ArrayList<Alquiler> resultado = new ArrayList<>();
-            for (Alquiler alquiler : alquileres) {
-                if (alquiler.getSocioId().equals(socioId)) {
-                    resultado.add(alquiler);
-                }
-            }
-            return resultado;
+            return alquileres.page(index, value, page);
         }
+        return PagedQuery.collect(pool, select, true, bindValue(value), page,
+                RowMappers.Alquileres::new, Alquiler::getId);
+    }
 
-        ArrayList<Alquiler> lista = new ArrayList<>();
-        try {
-            String query = "SELECT * FROM alquileres WHERE socio_id = ?";
-            ps = connection.prepareStatement(query);
-            ps.setString(1, socioId);
-            resultSet = ps.executeQuery();
-            while (resultSet.next()) {
-                Alquiler a = new Alquiler(
-                        resultSet.getString("id"),
-                        resultSet.getString("socio_id"),
-                        resultSet.getString("libro_id"),
-                        resultSet.getString("fecha_alquiler"),
-                        resultSet.getString("fecha_devolucion"),
-                        resultSet.getString("estado")
-                );
-                lista.add(a);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+    private String streamAlquileresPor(String index, String select, String value, PageRequest page,
+                                       RowConsumer<Alquiler> sink) throws IOException {
+        if (!useDatabase) {
+            return alquileres.page(index, value, page).forEach(sink);
         }
-        return lista;
+        return PagedQuery.streamOrFail(pool, select, true, bindValue(value), page,
+                RowMappers.Alquileres::new, Alquiler::getId, sink);
+    }
+
+    // Repository
+
+    @Override
+    public String stream(PageRequest page, RowConsumer<Alquiler> sink) throws IOException {
+        return streamAllAlquileres(page, sink);
+    }
+
+    @Override
+    public Alquiler findById(String id) {
+        return getAlquilerById(id);
+    }
+
+    @Override
+    public boolean insert(Alquiler row) {
+        return registrarAlquiler(row);
+    }
+
+    /** Rentals are not edited in place, they only change through {@link #devolverLibro}: always false. */
+    @Override
+    public boolean update(String id, Alquiler row) {
+        return false;
+    }
+
+    @Override
+    public boolean delete(String id) {
+        return deleteAlquiler(id);
     }
 }
@@ -1,50 +1,63 @@
 package biblioteca;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 
-public class ManageEmpleados {
-    private Connection connection;
-    private PreparedStatement ps;
-    private ResultSet resultSet;
-    private boolean useDatabase = false;
-    private ArrayList<Empleado> empleados;
+import Conexion.ConnectionPool;
+
+/**
+ * Data access for empleados. Safe to share between handler threads: every call borrows
+ * its own connection and statement, and the in-memory fallback is a {@link MemoryStore}.
+ */
+public class ManageEmpleados implements Repository<Empleado> {
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS empleados (" +
+            "id VARCHAR(36) PRIMARY KEY, " +
+            "nombre VARCHAR(100) NOT NULL, " +
+            "apellido VARCHAR(100), " +
+            "email VARCHAR(100), " +
+            "puesto VARCHAR(100), " +
+            "salario VARCHAR(20), " +
+            "fecha_contratacion DATE)";
+    private static final String SELECT_ALL = "SELECT * FROM empleados";
+    private static final String SELECT_BY_ID = "SELECT * FROM empleados WHERE id = ?";
+    private static final String INSERT = "INSERT INTO empleados (id, nombre, apellido, email, puesto, salario, fecha_contratacion) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE = "UPDATE empleados SET nombre = ?, apellido = ?, email = ?, puesto = ?, salario = ? WHERE id = ?";
+    private static final String DELETE = "DELETE FROM empleados WHERE id = ?";
+    private static final String COPY = "COPY empleados (id, nombre, apellido, email, puesto, salario, fecha_contratacion) FROM STDIN WITH (FORMAT csv)";
+    private static final String COPY_OUT = "COPY (SELECT id, nombre, apellido, email, puesto, salario, fecha_contratacion AS \"fechaContratacion\" FROM empleados ORDER BY id) TO STDOUT WITH (FORMAT csv, HEADER)";
+
+    private volatile ConnectionPool pool;
+    private volatile boolean useDatabase = false;
+    private final MemoryStore<Empleado> empleados = new MemoryStore<>(Empleado::getId);
+    private final TableVersion version = new TableVersion();
 
     public ManageEmpleados() {
-        empleados = new ArrayList<>();
-        empleados.add(new Empleado("E001", "Carlos", "Rodríguez", "carlos@example.com", "Bibliotecario", "1800", "2024-01-10"));
-        empleados.add(new Empleado("E002", "Ana", "Fernández", "ana@example.com", "Asistente", "1200", "2024-06-15"));
-        empleados.add(new Empleado("E003", "Luis", "Sánchez", "luis@example.com", "Administrador", "2000", "2023-03-20"));
+        empleados.insert(new Empleado("E001", "Carlos", "Rodríguez", "carlos@example.com", "Bibliotecario", "1800", "2024-01-10"));
+        empleados.insert(new Empleado("E002", "Ana", "Fernández", "ana@example.com", "Asistente", "1200", "2024-06-15"));
+        empleados.insert(new Empleado("E003", "Luis", "Sánchez", "luis@example.com", "Administrador", "2000", "2023-03-20"));
     }
 
-    public void openConnection(String bd, String host, String user, String password) {
-        try {
-            String url = String.format("jdbc:mysql://%s:3306/%s", host, bd);
-            this.connection = DriverManager.getConnection(url, user, password);
-            useDatabase = true;
-            System.out.println("✅ ManageEmpleados: Conectado a BD");
-            initDB();
-        } catch (SQLException e) {
-            useDatabase = false;
-            System.out.println("⚠️ ManageEmpleados: Usando almacenamiento en memoria");
-        }
+    public void openConnection(ConnectionPool pool) {
+        this.pool = pool;
+        useDatabase = true;
+        System.out.println("✅ ManageEmpleados: Conectado a BD");
+        initDB();
+        version.bump();
+    }
+
+    /** Changes with every write to empleados. */
+    public long getVersion() {
+        return version.get();
     }
 
     private void initDB() {
-        try {
-            String createTable = "CREATE TABLE IF NOT EXISTS empleados (" +
-                    "id VARCHAR(36) PRIMARY KEY, " +
-                    "nombre VARCHAR(100) NOT NULL, " +
-                    "apellido VARCHAR(100), " +
-                    "email VARCHAR(100), " +
-                    "puesto VARCHAR(100), " +
-                    "salario VARCHAR(20), " +
-                    "fecha_contratacion DATE)";
-            ps = connection.prepareStatement(createTable);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(CREATE_TABLE)) {
             ps.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
@@ -52,56 +65,36 @@ public class ManageEmpleados {
     }
 
     public ArrayList<Empleado> getAllEmpleados() {
+        return getAllEmpleados(PageRequest.ALL).getItems();
+    }
+
+    public Page<Empleado> getAllEmpleados(PageRequest page) {
         if (!useDatabase) {
-            return new ArrayList<>(empleados);
+            return empleados.page(page);
         }
+        return PagedQuery.collect(pool, SELECT_ALL, false, PagedQuery.NO_PARAMS, page, RowMappers.Empleados::new, Empleado::getId);
+    }
 
-        ArrayList<Empleado> lista = new ArrayList<>();
-        try {
-            String query = "SELECT * FROM empleados";
-            ps = connection.prepareStatement(query);
-            resultSet = ps.executeQuery();
-            while (resultSet.next()) {
-                Empleado e = new Empleado(
-                        resultSet.getString("id"),
-                        resultSet.getString("nombre"),
-                        resultSet.getString("apellido"),
-                        resultSet.getString("email"),
-                        resultSet.getString("puesto"),
-                        resultSet.getString("salario"),
-                        resultSet.getString("fecha_contratacion")
-                );
-                lista.add(e);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+    /** Streams a page of empleados to {@code sink} and returns the cursor of the next page. */
+    public String streamAllEmpleados(PageRequest page, RowConsumer<Empleado> sink) throws IOException {
+        if (!useDatabase) {
+            return empleados.page(page).forEach(sink);
         }
-        return lista;
+        return PagedQuery.streamOrFail(pool, SELECT_ALL, false, PagedQuery.NO_PARAMS, page, RowMappers.Empleados::new, Empleado::getId, sink);
     }
 
     public Empleado getEmpleadoById(String id) {
         if (!useDatabase) {
-            return empleados.stream()
-                    .filter(e -> e.getId().equals(id))
-                    .findFirst()
-                    .orElse(null);
+            return empleados.get(id);
         }
 
-        try {
-            String query = "SELECT * FROM empleados WHERE id = ?";
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(SELECT_BY_ID)) {
             ps.setString(1, id);
-            resultSet = ps.executeQuery();
-            if (resultSet.next()) {
-                return new Empleado(
-                        resultSet.getString("id"),
-                        resultSet.getString("nombre"),
-                        resultSet.getString("apellido"),
-                        resultSet.getString("email"),
-                        resultSet.getString("puesto"),
-                        resultSet.getString("salario"),
-                        resultSet.getString("fecha_contratacion")
-                );
+            try (ResultSet resultSet = ps.executeQuery()) {
+                if (resultSet.next()) {
+                    return new RowMappers.Empleados(resultSet).map(resultSet);
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -111,24 +104,13 @@ public class ManageEmpleados {
 
     public boolean addEmpleado(Empleado empleado) {
         if (!useDatabase) {
-            if (getEmpleadoById(empleado.getId()) != null) {
-                return false;
-            }
-            return empleados.add(empleado);
+            return version.changed(empleados.insert(empleado));
         }
 
-        try {
-            String query = "INSERT INTO empleados (id, nombre, apellido, email, puesto, salario, fecha_contratacion) VALUES (?, ?, ?, ?, ?, ?, ?)";
-            ps = connection.prepareStatement(query);
-            ps.setString(1, empleado.getId());
-            ps.setString(2, empleado.getNombre());
-            ps.setString(3, empleado.getApellido());
-            ps.setString(4, empleado.getEmail());
-            ps.setString(5, empleado.getPuesto());
-            ps.setString(6, empleado.getSalario());
-            ps.setString(7, empleado.getFechaContratacion());
-            int result = ps.executeUpdate();
-            return result > 0;
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(INSERT)) {
+            bindEmpleado(ps, empleado);
+            return version.changed(ps.executeUpdate() > 0);
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -137,27 +119,20 @@ public class ManageEmpleados {
 
     public boolean updateEmpleado(String id, Empleado empleadoAct) {
         if (!useDatabase) {
-            Empleado empleado = getEmpleadoById(id);
-            if (empleado == null) return false;
-            empleado.setNombre(empleadoAct.getNombre());
-            empleado.setApellido(empleadoAct.getApellido());
-            empleado.setEmail(empleadoAct.getEmail());
-            empleado.setPuesto(empleadoAct.getPuesto());
-            empleado.setSalario(empleadoAct.getSalario());
-            return true;
+            return version.changed(empleados.update(id, empleado -> new Empleado(id, empleadoAct.getNombre(), empleadoAct.getApellido(),
+                    empleadoAct.getEmail(), empleadoAct.getPuesto(), empleadoAct.getSalario(),
+                    empleado.getFechaContratacion())) != null);
         }
 
-        try {
-            String query = "UPDATE empleados SET nombre = ?, apellido = ?, email = ?, puesto = ?, salario = ? WHERE id = ?";
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(UPDATE)) {
             ps.setString(1, empleadoAct.getNombre());
             ps.setString(2, empleadoAct.getApellido());
             ps.setString(3, empleadoAct.getEmail());
             ps.setString(4, empleadoAct.getPuesto());
             ps.setString(5, empleadoAct.getSalario());
             ps.setString(6, id);
-            int result = ps.executeUpdate();
-            return result > 0;
+            return version.changed(ps.executeUpdate() > 0);
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -166,18 +141,85 @@ public class ManageEmpleados {
 
     public boolean deleteEmpleado(String id) {
         if (!useDatabase) {
-            return empleados.removeIf(e -> e.getId().equals(id));
+            return version.changed(empleados.remove(id) != null);
         }
 
-        try {
-            String query = "DELETE FROM empleados WHERE id = ?";
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(DELETE)) {
             ps.setString(1, id);
-            int result = ps.executeUpdate();
-            return result > 0;
+            return version.changed(ps.executeUpdate() > 0);
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
+
+    /**
+     * Loads many empleados at once, see {@link BulkInsert}. With {@code copy} the database
+     * path uses COPY when it is PostgreSQL; otherwise rows are batched {@code batchSize} at a time.
+     */
+    public BulkResult importEmpleados(RowSource<Empleado> source, int batchSize, boolean copy, BulkResult result) throws IOException {
+        try {
+            return importar(source, batchSize, copy, result);
+        } finally {
+            // even a failed import may have committed some batches
+            version.bump();
+        }
+    }
+
+    private BulkResult importar(RowSource<Empleado> source, int batchSize, boolean copy, BulkResult result) throws IOException {
+        if (!useDatabase) {
+            return BulkInsert.into(empleados, source, result);
+        }
+        if (copy && BulkInsert.supportsCopy(pool)) {
+            return BulkInsert.copy(pool, COPY, e -> new Object[] { e.getId(), e.getNombre(), e.getApellido(), e.getEmail(), e.getPuesto(), e.getSalario(), e.getFechaContratacion() },
+                    source, result);
+        }
+        return BulkInsert.batch(pool, INSERT, ManageEmpleados::bindEmpleado, source, batchSize, result);
+    }
+
+    /**
+     * Writes every empleado as CSV, header included, through COPY TO STDOUT. Returns false
+     * without writing when there is no PostgreSQL database behind the manager.
+     */
+    public boolean copyEmpleadosCsv(OutputStream out) throws IOException {
+        return useDatabase && BulkExport.copyOut(pool, COPY_OUT, out);
+    }
+
+    private static void bindEmpleado(PreparedStatement ps, Empleado empleado) throws SQLException {
+        ps.setString(1, empleado.getId());
+        ps.setString(2, empleado.getNombre());
+        ps.setString(3, empleado.getApellido());
+        ps.setString(4, empleado.getEmail());
+        ps.setString(5, empleado.getPuesto());
+        ps.setString(6, empleado.getSalario());
+        ps.setString(7, empleado.getFechaContratacion());
+    }
+
+    // Repository
+
+    @Override
+    public String stream(PageRequest page, RowConsumer<Empleado> sink) throws IOException {
+        return streamAllEmpleados(page, sink);
+    }
+
+    @Override
+    public Empleado findById(String id) {
+        return getEmpleadoById(id);
+    }
+
+    @Override
+    public boolean insert(Empleado row) {
+        return addEmpleado(row);
+    }
+
+    @Override
+    public boolean update(String id, Empleado row) {
+        return updateEmpleado(id, row);
+    }
+
+    @Override
+    public boolean delete(String id) {
+        return deleteEmpleado(id);
+    }
 }
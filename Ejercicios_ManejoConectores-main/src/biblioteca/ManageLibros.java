@@ -1,50 +1,104 @@
 package biblioteca;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class ManageLibros {
-    private Connection connection;
-    private PreparedStatement ps;
-    private ResultSet resultSet;
-    private boolean useDatabase = false;
-    private ArrayList<Libro> libros;
+import Conexion.ConnectionPool;
+
+/**
+ * Data access for libros. Safe to share between handler threads: every call borrows
+ * its own connection and statement, and the in-memory fallback is a {@link MemoryStore}.
+ *
+ * In memory, the disponibles/alquilados listings are served from a secondary index on
+ * {@code disponible} kept in sync with every write, so they never scan the table. In the
+ * database they use fixed {@code disponible = TRUE/FALSE} predicates so PostgreSQL can pick
+ * the partial indexes created in script.sql.
+ */
+public class ManageLibros implements Repository<Libro> {
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS libros (" +
+            "id VARCHAR(36) PRIMARY KEY, " +
+            "titulo VARCHAR(200) NOT NULL, " +
+            "autor VARCHAR(100), " +
+            "isbn VARCHAR(20), " +
+            "disponible BOOLEAN DEFAULT TRUE)";
+    private static final String SELECT_ALL = "SELECT * FROM libros";
+    private static final String SELECT_DISPONIBLES = "SELECT * FROM libros WHERE disponible = TRUE";
+    private static final String SELECT_ALQUILADOS = "SELECT * FROM libros WHERE disponible = FALSE";
+    private static final String SELECT_BY_ID = "SELECT * FROM libros WHERE id = ?";
+    private static final String INSERT = "INSERT INTO libros (id, titulo, autor, isbn, disponible) VALUES (?, ?, ?, ?, ?)";
+    private static final String UPDATE = "UPDATE libros SET titulo = ?, autor = ?, isbn = ?, disponible = ? WHERE id = ?";
+    private static final String DELETE = "DELETE FROM libros WHERE id = ?";
+    private static final String COPY = "COPY libros (id, titulo, autor, isbn, disponible) FROM STDIN WITH (FORMAT csv)";
+    private static final String COPY_OUT = "COPY (SELECT id, titulo, autor, isbn, disponible::text AS disponible FROM libros ORDER BY id) TO STDOUT WITH (FORMAT csv, HEADER)";
+    private static final String UPDATE_DISPONIBLE = "UPDATE libros SET disponible = ? WHERE id = ?";
+
+    private static final String DISPONIBLE = "disponible";
+
+    private volatile ConnectionPool pool;
+    private volatile boolean useDatabase = false;
+    private final MemoryStore<Libro> libros = new MemoryStore<>(Libro::getId)
+            .withIndex(DISPONIBLE, l -> String.valueOf(l.isDisponible()));
+    private volatile EntityCache<Libro> cache = new EntityCache<>(EntityCache.DEFAULT_MAX_SIZE, EntityCache.DEFAULT_TTL_MS);
+    private final TableVersion version = new TableVersion();
+    private volatile ChangeListener listener = ChangeListener.NONE;
 
     public ManageLibros() {
-        libros = new ArrayList<>();
-        libros.add(new Libro("L001", "Don Quijote", "Miguel de Cervantes", "978-8437605807", true));
-        libros.add(new Libro("L002", "Cien años de soledad", "Gabriel García Márquez", "978-6073128094", true));
-        libros.add(new Libro("L003", "La casa de los espíritus", "Isabel Allende", "978-8432217876", false));
-        libros.add(new Libro("L004", "Ficciones", "Jorge Luis Borges", "978-8437607499", true));
-        libros.add(new Libro("L005", "El quijote de la mancha", "Miguel de Cervantes", "978-8467054735", false));
+        libros.insert(new Libro("L001", "Don Quijote", "Miguel de Cervantes", "978-8437605807", true));
+        libros.insert(new Libro("L002", "Cien años de soledad", "Gabriel García Márquez", "978-6073128094", true));
+        libros.insert(new Libro("L003", "La casa de los espíritus", "Isabel Allende", "978-8432217876", false));
+        libros.insert(new Libro("L004", "Ficciones", "Jorge Luis Borges", "978-8437607499", true));
+        libros.insert(new Libro("L005", "El quijote de la mancha", "Miguel de Cervantes", "978-8467054735", false));
     }
 
-    public void openConnection(String bd, String host, String user, String password) {
-        try {
-            String url = String.format("jdbc:postgresql://%s:5432/%s", host, bd);
-            this.connection = DriverManager.getConnection(url, user, password);
-            useDatabase = true;
-            System.out.println("✅ ManageLibros: Conectado a BD");
-            initDB();
-        } catch (SQLException e) {
-            useDatabase = false;
-            System.out.println("⚠️ ManageLibros: Usando almacenamiento en memoria");
-        }
+    public void openConnection(ConnectionPool pool) {
+        this.pool = pool;
+        useDatabase = true;
+        System.out.println("✅ ManageLibros: Conectado a BD");
+        initDB();
+        version.bump();
+    }
+
+    /** Replaces the by-id cache used in database mode; a size of 0 disables it. */
+    public void configureCache(int maxSize, long ttlMs) {
+        cache = new EntityCache<>(maxSize, ttlMs);
+    }
+
+    public EntityCache<Libro> getCache() {
+        return cache;
+    }
+
+    /** Changes with every write to libros, rentals taking or returning one included. */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /** Receives a {@code libro.disponibilidad} event every time a libro's disponible changes. */
+    public void setChangeListener(ChangeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Records a committed change of disponible. Also called by {@link ManageAlquileres},
+     * which changes it in its own transactions.
+     */
+    void disponibilidadCambiada(String id, boolean disponible) {
+        version.bump();
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", id);
+        data.put("disponible", disponible);
+        listener.changed("libro.disponibilidad", data);
     }
 
     private void initDB() {
-        try {
-            String createTable = "CREATE TABLE IF NOT EXISTS libros (" +
-                    "id VARCHAR(36) PRIMARY KEY, " +
-                    "titulo VARCHAR(200) NOT NULL, " +
-                    "autor VARCHAR(100), " +
-                    "isbn VARCHAR(20), " +
-                    "disponible BOOLEAN DEFAULT 1)";
-            ps = connection.prepareStatement(createTable);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(CREATE_TABLE)) {
             ps.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
@@ -52,116 +106,80 @@ public class ManageLibros {
     }
 
     public ArrayList<Libro> getAllLibros() {
+        return getAllLibros(PageRequest.ALL).getItems();
+    }
+
+    public Page<Libro> getAllLibros(PageRequest page) {
         if (!useDatabase) {
-            return new ArrayList<>(libros);
+            return libros.page(page);
         }
+        return PagedQuery.collect(pool, SELECT_ALL, false, PagedQuery.NO_PARAMS, page, RowMappers.Libros::new, Libro::getId);
+    }
 
-        ArrayList<Libro> lista = new ArrayList<>();
-        try {
-            String query = "SELECT * FROM libros";
-            ps = connection.prepareStatement(query);
-            resultSet = ps.executeQuery();
-            while (resultSet.next()) {
-                Libro l = new Libro(
-                        resultSet.getString("id"),
-                        resultSet.getString("titulo"),
-                        resultSet.getString("autor"),
-                        resultSet.getString("isbn"),
-                        resultSet.getBoolean("disponible")
-                );
-                lista.add(l);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+    /** Streams a page of libros to {@code sink} and returns the cursor of the next page. */
+    public String streamAllLibros(PageRequest page, RowConsumer<Libro> sink) throws IOException {
+        if (!useDatabase) {
+            return libros.page(page).forEach(sink);
         }
-        return lista;
+        return PagedQuery.streamOrFail(pool, SELECT_ALL, false, PagedQuery.NO_PARAMS, page, RowMappers.Libros::new, Libro::getId, sink);
     }
 
     public ArrayList<Libro> getLibrosDisponibles() {
-        if (!useDatabase) {
-            ArrayList<Libro> disponibles = new ArrayList<>();
-            for (Libro libro : libros) {
-                if (libro.isDisponible()) {
-                    disponibles.add(libro);
-                }
-            }
-            return disponibles;
-        }
+        return getLibrosDisponibles(PageRequest.ALL).getItems();
+    }
 
-        ArrayList<Libro> disponibles = new ArrayList<>();
-        try {
-            String query = "SELECT * FROM libros WHERE disponible = true";
-            ps = connection.prepareStatement(query);
-            resultSet = ps.executeQuery();
-            while (resultSet.next()) {
-                Libro l = new Libro(
-                        resultSet.getString("id"),
-                        resultSet.getString("titulo"),
-                        resultSet.getString("autor"),
-                        resultSet.getString("isbn"),
-                        resultSet.getBoolean("disponible")
-                );
-                disponibles.add(l);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return disponibles;
+    public Page<Libro> getLibrosDisponibles(PageRequest page) {
+        return getLibrosPorDisponibilidad(true, page);
+    }
+
+    public String streamLibrosDisponibles(PageRequest page, RowConsumer<Libro> sink) throws IOException {
+        return streamLibrosPorDisponibilidad(true, page, sink);
     }
 
     public ArrayList<Libro> getLibrosAlquilados() {
+        return getLibrosAlquilados(PageRequest.ALL).getItems();
+    }
+
+    public Page<Libro> getLibrosAlquilados(PageRequest page) {
+        return getLibrosPorDisponibilidad(false, page);
+    }
+
+    public String streamLibrosAlquilados(PageRequest page, RowConsumer<Libro> sink) throws IOException {
+        return streamLibrosPorDisponibilidad(false, page, sink);
+    }
+
+    private Page<Libro> getLibrosPorDisponibilidad(boolean disponible, PageRequest page) {
         if (!useDatabase) {
-            ArrayList<Libro> alquilados = new ArrayList<>();
-            for (Libro libro : libros) {
-                if (!libro.isDisponible()) {
-                    alquilados.add(libro);
-                }
-            }
-            return alquilados;
+            return libros.page(DISPONIBLE, String.valueOf(disponible), page);
         }
+        return PagedQuery.collect(pool, disponible ? SELECT_DISPONIBLES : SELECT_ALQUILADOS, true,
+                PagedQuery.NO_PARAMS, page, RowMappers.Libros::new, Libro::getId);
+    }
 
-        ArrayList<Libro> alquilados = new ArrayList<>();
-        try {
-            String query = "SELECT * FROM libros WHERE disponible = false";
-            ps = connection.prepareStatement(query);
-            resultSet = ps.executeQuery();
-            while (resultSet.next()) {
-                Libro l = new Libro(
-                        resultSet.getString("id"),
-                        resultSet.getString("titulo"),
-                        resultSet.getString("autor"),
-                        resultSet.getString("isbn"),
-                        resultSet.getBoolean("disponible")
-                );
-                alquilados.add(l);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+    private String streamLibrosPorDisponibilidad(boolean disponible, PageRequest page, RowConsumer<Libro> sink) throws IOException {
+        if (!useDatabase) {
+            return libros.page(DISPONIBLE, String.valueOf(disponible), page).forEach(sink);
         }
-        return alquilados;
+        return PagedQuery.streamOrFail(pool, disponible ? SELECT_DISPONIBLES : SELECT_ALQUILADOS, true,
+                PagedQuery.NO_PARAMS, page, RowMappers.Libros::new, Libro::getId, sink);
     }
 
     public Libro getLibroById(String id) {
         if (!useDatabase) {
-            return libros.stream()
-                    .filter(l -> l.getId().equals(id))
-                    .findFirst()
-                    .orElse(null);
+            return libros.get(id);
         }
 
-        try {
-            String query = "SELECT * FROM libros WHERE id = ?";
-            ps = connection.prepareStatement(query);
+        return cache.getOrLoad(id, () -> loadLibro(id));
+    }
+
+    private Libro loadLibro(String id) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(SELECT_BY_ID)) {
             ps.setString(1, id);
-            resultSet = ps.executeQuery();
-            if (resultSet.next()) {
-                return new Libro(
-                        resultSet.getString("id"),
-                        resultSet.getString("titulo"),
-                        resultSet.getString("autor"),
-                        resultSet.getString("isbn"),
-                        resultSet.getBoolean("disponible")
-                );
+            try (ResultSet resultSet = ps.executeQuery()) {
+                if (resultSet.next()) {
+                    return new RowMappers.Libros(resultSet).map(resultSet);
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -171,22 +189,13 @@ public class ManageLibros {
 
     public boolean addLibro(Libro libro) {
         if (!useDatabase) {
-            if (getLibroById(libro.getId()) != null) {
-                return false;
-            }
-            return libros.add(libro);
+            return version.changed(libros.insert(libro));
         }
 
-        try {
-            String query = "INSERT INTO libros (id, titulo, autor, isbn, disponible) VALUES (?, ?, ?, ?, ?)";
-            ps = connection.prepareStatement(query);
-            ps.setString(1, libro.getId());
-            ps.setString(2, libro.getTitulo());
-            ps.setString(3, libro.getAutor());
-            ps.setString(4, libro.getIsbn());
-            ps.setBoolean(5, libro.isDisponible());
-            int result = ps.executeUpdate();
-            return result > 0;
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(INSERT)) {
+            bindLibro(ps, libro);
+            return version.changed(ps.executeUpdate() > 0);
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -195,25 +204,20 @@ public class ManageLibros {
 
     public boolean updateLibro(String id, Libro libroAct) {
         if (!useDatabase) {
-            Libro libro = getLibroById(id);
-            if (libro == null) return false;
-            libro.setTitulo(libroAct.getTitulo());
-            libro.setAutor(libroAct.getAutor());
-            libro.setIsbn(libroAct.getIsbn());
-            libro.setDisponible(libroAct.isDisponible());
-            return true;
+            return version.changed(libros.update(id, l -> new Libro(id, libroAct.getTitulo(), libroAct.getAutor(),
+                    libroAct.getIsbn(), libroAct.isDisponible())) != null);
         }
 
-        try {
-            String query = "UPDATE libros SET titulo = ?, autor = ?, isbn = ?, disponible = ? WHERE id = ?";
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(UPDATE)) {
             ps.setString(1, libroAct.getTitulo());
             ps.setString(2, libroAct.getAutor());
             ps.setString(3, libroAct.getIsbn());
             ps.setBoolean(4, libroAct.isDisponible());
             ps.setString(5, id);
-            int result = ps.executeUpdate();
-            return result > 0;
+            boolean ok = ps.executeUpdate() > 0;
+            cache.invalidate(id);
+            return version.changed(ok);
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -222,15 +226,15 @@ public class ManageLibros {
 
     public boolean deleteLibro(String id) {
         if (!useDatabase) {
-            return libros.removeIf(l -> l.getId().equals(id));
+            return version.changed(libros.remove(id) != null);
         }
 
-        try {
-            String query = "DELETE FROM libros WHERE id = ?";
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(DELETE)) {
             ps.setString(1, id);
-            int result = ps.executeUpdate();
-            return result > 0;
+            boolean ok = ps.executeUpdate() > 0;
+            cache.invalidate(id);
+            return version.changed(ok);
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -239,24 +243,101 @@ public class ManageLibros {
 
     public boolean setDisponibilidad(String id, boolean disponible) {
         if (!useDatabase) {
-            Libro libro = getLibroById(id);
-            if (libro != null) {
-                libro.setDisponible(disponible);
-                return true;
-            }
-            return false;
+            boolean ok = libros.update(id, l -> new Libro(id, l.getTitulo(), l.getAutor(), l.getIsbn(), disponible)) != null;
+            if (ok) disponibilidadCambiada(id, disponible);
+            return ok;
         }
 
-        try {
-            String query = "UPDATE libros SET disponible = ? WHERE id = ?";
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(UPDATE_DISPONIBLE)) {
             ps.setBoolean(1, disponible);
             ps.setString(2, id);
-            int result = ps.executeUpdate();
-            return result > 0;
+            boolean ok = ps.executeUpdate() > 0;
+            cache.invalidate(id);
+            if (ok) disponibilidadCambiada(id, disponible);
+            return ok;
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
+
+    /**
+     * In-memory compare-and-set on {@code disponible}: changes it to {@code nueva} only when
+     * it is currently {@code esperada}. The database path locks the row instead, see
+     * {@link ManageAlquileres#registrarAlquiler}.
+     */
+    boolean cambiarDisponibilidad(String id, boolean esperada, boolean nueva) {
+        boolean ok = libros.update(id, l -> l.isDisponible() != esperada ? null
+                : new Libro(id, l.getTitulo(), l.getAutor(), l.getIsbn(), nueva)) != null;
+        if (ok) disponibilidadCambiada(id, nueva);
+        return ok;
+    }
+
+    /**
+     * Loads many libros at once, see {@link BulkInsert}. With {@code copy} the database
+     * path uses COPY when it is PostgreSQL; otherwise rows are batched {@code batchSize} at a time.
+     */
+    public BulkResult importLibros(RowSource<Libro> source, int batchSize, boolean copy, BulkResult result) throws IOException {
+        try {
+            return importar(source, batchSize, copy, result);
+        } finally {
+            // even a failed import may have committed some batches
+            version.bump();
+        }
+    }
+
+    private BulkResult importar(RowSource<Libro> source, int batchSize, boolean copy, BulkResult result) throws IOException {
+        if (!useDatabase) {
+            return BulkInsert.into(libros, source, result);
+        }
+        if (copy && BulkInsert.supportsCopy(pool)) {
+            return BulkInsert.copy(pool, COPY, l -> new Object[] { l.getId(), l.getTitulo(), l.getAutor(), l.getIsbn(), l.isDisponible() },
+                    source, result);
+        }
+        return BulkInsert.batch(pool, INSERT, ManageLibros::bindLibro, source, batchSize, result);
+    }
+
+    /**
+     * Writes every libro as CSV, header included, through COPY TO STDOUT. Returns false
+     * without writing when there is no PostgreSQL database behind the manager.
+     */
+    public boolean copyLibrosCsv(OutputStream out) throws IOException {
+        return useDatabase && BulkExport.copyOut(pool, COPY_OUT, out);
+    }
+
+    private static void bindLibro(PreparedStatement ps, Libro libro) throws SQLException {
+        ps.setString(1, libro.getId());
+        ps.setString(2, libro.getTitulo());
+        ps.setString(3, libro.getAutor());
+        ps.setString(4, libro.getIsbn());
+        ps.setBoolean(5, libro.isDisponible());
+    }
+
+    // Repository
+
+    @Override
+    public String stream(PageRequest page, RowConsumer<Libro> sink) throws IOException {
+        return streamAllLibros(page, sink);
+    }
+
+    @Override
+    public Libro findById(String id) {
+        return getLibroById(id);
+    }
+
+    @Override
+    public boolean insert(Libro row) {
+        return addLibro(row);
+    }
+
+    @Override
+    public boolean update(String id, Libro row) {
+        return updateLibro(id, row);
+    }
+
+    @Override
+    public boolean delete(String id) {
+        return deleteLibro(id);
+    }
 }
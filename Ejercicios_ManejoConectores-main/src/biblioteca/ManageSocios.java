@@ -1,49 +1,72 @@
 package biblioteca;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 
-public class ManageSocios {
-    private Connection connection;
-    private PreparedStatement ps;
-    private ResultSet resultSet;
-    private boolean useDatabase = false;
-    private ArrayList<Socio> socios;
+import Conexion.ConnectionPool;
+
+/**
+ * Data access for socios. Safe to share between handler threads: every call borrows
+ * its own connection and statement, and the in-memory fallback is a {@link MemoryStore}.
+ */
+public class ManageSocios implements Repository<Socio> {
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS socios (" +
+            "id VARCHAR(36) PRIMARY KEY, " +
+            "nombre VARCHAR(100) NOT NULL, " +
+            "apellido VARCHAR(100), " +
+            "email VARCHAR(100), " +
+            "telefono VARCHAR(20), " +
+            "fecha_registro DATE)";
+    private static final String SELECT_ALL = "SELECT * FROM socios";
+    private static final String SELECT_BY_ID = "SELECT * FROM socios WHERE id = ?";
+    private static final String INSERT = "INSERT INTO socios (id, nombre, apellido, email, telefono, fecha_registro) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE = "UPDATE socios SET nombre = ?, apellido = ?, email = ?, telefono = ? WHERE id = ?";
+    private static final String DELETE = "DELETE FROM socios WHERE id = ?";
+    private static final String COPY = "COPY socios (id, nombre, apellido, email, telefono, fecha_registro) FROM STDIN WITH (FORMAT csv)";
+    private static final String COPY_OUT = "COPY (SELECT id, nombre, apellido, email, telefono, fecha_registro AS \"fechaRegistro\" FROM socios ORDER BY id) TO STDOUT WITH (FORMAT csv, HEADER)";
+
+    private volatile ConnectionPool pool;
+    private volatile boolean useDatabase = false;
+    private final MemoryStore<Socio> socios = new MemoryStore<>(Socio::getId);
+    private volatile EntityCache<Socio> cache = new EntityCache<>(EntityCache.DEFAULT_MAX_SIZE, EntityCache.DEFAULT_TTL_MS);
+    private final TableVersion version = new TableVersion();
 
     public ManageSocios() {
-        socios = new ArrayList<>();
-        socios.add(new Socio("S001", "Juan", "García", "juan@example.com", "123456789", "2025-01-15"));
-        socios.add(new Socio("S002", "María", "López", "maria@example.com", "987654321", "2025-02-01"));
-        socios.add(new Socio("S003", "Pedro", "Martínez", "pedro@example.com", "555666777", "2025-02-05"));
+        socios.insert(new Socio("S001", "Juan", "García", "juan@example.com", "123456789", "2025-01-15"));
+        socios.insert(new Socio("S002", "María", "López", "maria@example.com", "987654321", "2025-02-01"));
+        socios.insert(new Socio("S003", "Pedro", "Martínez", "pedro@example.com", "555666777", "2025-02-05"));
     }
 
-    public void openConnection(String bd, String host, String user, String password) {
-        try {
-            String url = String.format("jdbc:postgresql://%s:5432/%s", host, bd);
-            this.connection = DriverManager.getConnection(url, user, password);
-            useDatabase = true;
-            System.out.println("✅ ManageSocios: Conectado a BD");
-            initDB();
-        } catch (SQLException e) {
-            useDatabase = false;
-            System.out.println("⚠️ ManageSocios: Usando almacenamiento en memoria");
-        }
+    public void openConnection(ConnectionPool pool) {
+        this.pool = pool;
+        useDatabase = true;
+        System.out.println("✅ ManageSocios: Conectado a BD");
+        initDB();
+        version.bump();
+    }
+
+    /** Replaces the by-id cache used in database mode; a size of 0 disables it. */
+    public void configureCache(int maxSize, long ttlMs) {
+        cache = new EntityCache<>(maxSize, ttlMs);
+    }
+
+    public EntityCache<Socio> getCache() {
+        return cache;
+    }
+
+    /** Changes with every write to socios. */
+    public long getVersion() {
+        return version.get();
     }
 
     private void initDB() {
-        try {
-            String createTable = "CREATE TABLE IF NOT EXISTS socios (" +
-                    "id VARCHAR(36) PRIMARY KEY, " +
-                    "nombre VARCHAR(100) NOT NULL, " +
-                    "apellido VARCHAR(100), " +
-                    "email VARCHAR(100), " +
-                    "telefono VARCHAR(20), " +
-                    "fecha_registro DATE)";
-            ps = connection.prepareStatement(createTable);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(CREATE_TABLE)) {
             ps.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
@@ -51,54 +74,40 @@ public class ManageSocios {
     }
 
     public ArrayList<Socio> getAllSocios() {
+        return getAllSocios(PageRequest.ALL).getItems();
+    }
+
+    public Page<Socio> getAllSocios(PageRequest page) {
         if (!useDatabase) {
-            return new ArrayList<>(socios);
+            return socios.page(page);
         }
+        return PagedQuery.collect(pool, SELECT_ALL, false, PagedQuery.NO_PARAMS, page, RowMappers.Socios::new, Socio::getId);
+    }
 
-        ArrayList<Socio> lista = new ArrayList<>();
-        try {
-            String query = "SELECT * FROM socios";
-            ps = connection.prepareStatement(query);
-            resultSet = ps.executeQuery();
-            while (resultSet.next()) {
-                Socio s = new Socio(
-                        resultSet.getString("id"),
-                        resultSet.getString("nombre"),
-                        resultSet.getString("apellido"),
-                        resultSet.getString("email"),
-                        resultSet.getString("telefono"),
-                        resultSet.getString("fecha_registro")
-                );
-                lista.add(s);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+    /** Streams a page of socios to {@code sink} and returns the cursor of the next page. */
+    public String streamAllSocios(PageRequest page, RowConsumer<Socio> sink) throws IOException {
+        if (!useDatabase) {
+            return socios.page(page).forEach(sink);
         }
-        return lista;
+        return PagedQuery.streamOrFail(pool, SELECT_ALL, false, PagedQuery.NO_PARAMS, page, RowMappers.Socios::new, Socio::getId, sink);
     }
 
     public Socio getSocioById(String id) {
         if (!useDatabase) {
-            return socios.stream()
-                    .filter(s -> s.getId().equals(id))
-                    .findFirst()
-                    .orElse(null);
+            return socios.get(id);
         }
 
-        try {
-            String query = "SELECT * FROM socios WHERE id = ?";
-            ps = connection.prepareStatement(query);
+        return cache.getOrLoad(id, () -> loadSocio(id));
+    }
+
+    private Socio loadSocio(String id) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(SELECT_BY_ID)) {
             ps.setString(1, id);
-            resultSet = ps.executeQuery();
-            if (resultSet.next()) {
-                return new Socio(
-                        resultSet.getString("id"),
-                        resultSet.getString("nombre"),
-                        resultSet.getString("apellido"),
-                        resultSet.getString("email"),
-                        resultSet.getString("telefono"),
-                        resultSet.getString("fecha_registro")
-                );
+            try (ResultSet resultSet = ps.executeQuery()) {
+                if (resultSet.next()) {
+                    return new RowMappers.Socios(resultSet).map(resultSet);
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -108,23 +117,13 @@ public class ManageSocios {
 
     public boolean addSocio(Socio socio) {
         if (!useDatabase) {
-            if (getSocioById(socio.getId()) != null) {
-                return false;
-            }
-            return socios.add(socio);
+            return version.changed(socios.insert(socio));
         }
 
-        try {
-            String query = "INSERT INTO socios (id, nombre, apellido, email, telefono, fecha_registro) VALUES (?, ?, ?, ?, ?, ?)";
-            ps = connection.prepareStatement(query);
-            ps.setString(1, socio.getId());
-            ps.setString(2, socio.getNombre());
-            ps.setString(3, socio.getApellido());
-            ps.setString(4, socio.getEmail());
-            ps.setString(5, socio.getTelefono());
-            ps.setString(6, socio.getFechaRegistro());
-            int result = ps.executeUpdate();
-            return result > 0;
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(INSERT)) {
+            bindSocio(ps, socio);
+            return version.changed(ps.executeUpdate() > 0);
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -133,25 +132,20 @@ public class ManageSocios {
 
     public boolean updateSocio(String id, Socio socioAct) {
         if (!useDatabase) {
-            Socio socio = getSocioById(id);
-            if (socio == null) return false;
-            socio.setNombre(socioAct.getNombre());
-            socio.setApellido(socioAct.getApellido());
-            socio.setEmail(socioAct.getEmail());
-            socio.setTelefono(socioAct.getTelefono());
-            return true;
+            return version.changed(socios.update(id, socio -> new Socio(id, socioAct.getNombre(), socioAct.getApellido(),
+                    socioAct.getEmail(), socioAct.getTelefono(), socio.getFechaRegistro())) != null);
         }
 
-        try {
-            String query = "UPDATE socios SET nombre = ?, apellido = ?, email = ?, telefono = ? WHERE id = ?";
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(UPDATE)) {
             ps.setString(1, socioAct.getNombre());
             ps.setString(2, socioAct.getApellido());
             ps.setString(3, socioAct.getEmail());
             ps.setString(4, socioAct.getTelefono());
             ps.setString(5, id);
-            int result = ps.executeUpdate();
-            return result > 0;
+            boolean ok = ps.executeUpdate() > 0;
+            cache.invalidate(id);
+            return version.changed(ok);
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -160,18 +154,86 @@ public class ManageSocios {
 
     public boolean deleteSocio(String id) {
         if (!useDatabase) {
-            return socios.removeIf(s -> s.getId().equals(id));
+            return version.changed(socios.remove(id) != null);
         }
 
-        try {
-            String query = "DELETE FROM socios WHERE id = ?";
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(DELETE)) {
             ps.setString(1, id);
-            int result = ps.executeUpdate();
-            return result > 0;
+            boolean ok = ps.executeUpdate() > 0;
+            cache.invalidate(id);
+            return version.changed(ok);
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
+
+    /**
+     * Loads many socios at once, see {@link BulkInsert}. With {@code copy} the database
+     * path uses COPY when it is PostgreSQL; otherwise rows are batched {@code batchSize} at a time.
+     */
+    public BulkResult importSocios(RowSource<Socio> source, int batchSize, boolean copy, BulkResult result) throws IOException {
+        try {
+            return importar(source, batchSize, copy, result);
+        } finally {
+            // even a failed import may have committed some batches
+            version.bump();
+        }
+    }
+
+    private BulkResult importar(RowSource<Socio> source, int batchSize, boolean copy, BulkResult result) throws IOException {
+        if (!useDatabase) {
+            return BulkInsert.into(socios, source, result);
+        }
+        if (copy && BulkInsert.supportsCopy(pool)) {
+            return BulkInsert.copy(pool, COPY, s -> new Object[] { s.getId(), s.getNombre(), s.getApellido(), s.getEmail(), s.getTelefono(), s.getFechaRegistro() },
+                    source, result);
+        }
+        return BulkInsert.batch(pool, INSERT, ManageSocios::bindSocio, source, batchSize, result);
+    }
+
+    /**
+     * Writes every socio as CSV, header included, through COPY TO STDOUT. Returns false
+     * without writing when there is no PostgreSQL database behind the manager.
+     */
+    public boolean copySociosCsv(OutputStream out) throws IOException {
+        return useDatabase && BulkExport.copyOut(pool, COPY_OUT, out);
+    }
+
+    private static void bindSocio(PreparedStatement ps, Socio socio) throws SQLException {
+        ps.setString(1, socio.getId());
+        ps.setString(2, socio.getNombre());
+        ps.setString(3, socio.getApellido());
+        ps.setString(4, socio.getEmail());
+        ps.setString(5, socio.getTelefono());
+        ps.setString(6, socio.getFechaRegistro());
+    }
+
+    // Repository
+
+    @Override
+    public String stream(PageRequest page, RowConsumer<Socio> sink) throws IOException {
+        return streamAllSocios(page, sink);
+    }
+
+    @Override
+    public Socio findById(String id) {
+        return getSocioById(id);
+    }
+
+    @Override
+    public boolean insert(Socio row) {
+        return addSocio(row);
+    }
+
+    @Override
+    public boolean update(String id, Socio row) {
+        return updateSocio(id, row);
+    }
+
+    @Override
+    public boolean delete(String id) {
+        return deleteSocio(id);
+    }
 }
@@ -0,0 +1,154 @@
+package biblioteca;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * In-memory table used by the managers when there is no database: a hash index on the id,
+ * an id-ordered view for keyset pages, and optional secondary indexes on other columns.
+ *
+ * Writes are serialised on the store so every index moves together; reads take no lock and
+ * return snapshot lists. Stored rows are never mutated, writes replace them, so a row handed
+ * to a reader stays consistent even while it is being updated.
+ */
+public class MemoryStore<T> {
+    private final Function<T, String> id;
+    private final ConcurrentHashMap<String, T> rows = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, T> ordered = new ConcurrentSkipListMap<>();
+    private final Map<String, Index<T>> indexes = new LinkedHashMap<>();
+
+    public MemoryStore(Function<T, String> id) {
+        this.id = id;
+    }
+
+    /** Adds a secondary index on {@code key}; call before inserting any row. */
+    public MemoryStore<T> withIndex(String name, Function<T, String> key) {
+        indexes.put(name, new Index<>(key));
+        return this;
+    }
+
+    public T get(String key) {
+        return key == null ? null : rows.get(key);
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    /** Inserts the row unless its id is already present. */
+    public synchronized boolean insert(T row) {
+        String key = id.apply(row);
+        if (rows.putIfAbsent(key, row) != null) {
+            return false;
+        }
+        ordered.put(key, row);
+        for (Index<T> index : indexes.values()) {
+            index.add(key, row);
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the row stored under {@code key} with {@code change} applied to it. The new row
+     * may carry a different id as long as that id is free, and {@code change} may return null
+     * to leave the row as it is. Returns the new row, or null when nothing was replaced.
+     */
+    public synchronized T update(String key, UnaryOperator<T> change) {
+        T old = rows.get(key);
+        if (old == null) {
+            return null;
+        }
+        T row = change.apply(old);
+        if (row == null) {
+            return null;
+        }
+        String newKey = id.apply(row);
+        if (!newKey.equals(key) && rows.containsKey(newKey)) {
+            return null;
+        }
+        // the new row is stored before the old one goes, so a reader never misses it
+        rows.put(newKey, row);
+        ordered.put(newKey, row);
+        for (Index<T> index : indexes.values()) {
+            index.move(key, old, newKey, row);
+        }
+        if (!newKey.equals(key)) {
+            rows.remove(key);
+            ordered.remove(key);
+        }
+        return row;
+    }
+
+    public synchronized T remove(String key) {
+        T old = rows.get(key);
+        if (old != null) {
+            unlink(key, old);
+        }
+        return old;
+    }
+
+    private void unlink(String key, T old) {
+        rows.remove(key);
+        ordered.remove(key);
+        for (Index<T> index : indexes.values()) {
+            index.remove(key, old);
+        }
+    }
+
+    /** Every row, ordered by id. */
+    public ArrayList<T> snapshot() {
+        return new ArrayList<>(ordered.values());
+    }
+
+    /** Rows whose indexed column equals {@code value}, ordered by id. */
+    public ArrayList<T> find(String index, String value) {
+        return new ArrayList<>(indexes.get(index).rows(value).values());
+    }
+
+    public Page<T> page(PageRequest req) {
+        return Page.sliceSorted(ordered, req, id);
+    }
+
+    public Page<T> page(String index, String value, PageRequest req) {
+        return Page.sliceSorted(indexes.get(index).rows(value), req, id);
+    }
+
+    /** Secondary index: column value to the id-ordered rows that have it. */
+    private static final class Index<T> {
+        private final Function<T, String> key;
+        private final ConcurrentHashMap<String, ConcurrentSkipListMap<String, T>> buckets = new ConcurrentHashMap<>();
+
+        Index(Function<T, String> key) {
+            this.key = key;
+        }
+
+        void add(String id, T row) {
+            buckets.computeIfAbsent(String.valueOf(key.apply(row)), k -> new ConcurrentSkipListMap<>()).put(id, row);
+        }
+
+        /** Replaces {@code old} with {@code row}, adding the new entry before dropping the old one. */
+        void move(String oldId, T old, String id, T row) {
+            add(id, row);
+            if (!id.equals(oldId) || !String.valueOf(key.apply(row)).equals(String.valueOf(key.apply(old)))) {
+                remove(oldId, old);
+            }
+        }
+
+        void remove(String id, T row) {
+            ConcurrentSkipListMap<String, T> bucket = buckets.get(String.valueOf(key.apply(row)));
+            if (bucket != null) {
+                bucket.remove(id);
+            }
+        }
+
+        ConcurrentSkipListMap<String, T> rows(String value) {
+            ConcurrentSkipListMap<String, T> bucket = buckets.get(String.valueOf(value));
+            return bucket != null ? bucket : new ConcurrentSkipListMap<>();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package biblioteca;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.NavigableMap;
+import java.util.function.Function;
+
+/**
+ * One page of a list query. {@code next} is the id to pass as {@code after} to get the
+ * following page, or null when this is the last one.
+ */
+public class Page<T> {
+    private final ArrayList<T> items;
+    private final String next;
+
+    public Page(ArrayList<T> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    public ArrayList<T> getItems() {
+        return items;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    /** Hands every item to {@code sink} and returns the cursor of the next page. */
+    public String forEach(RowConsumer<T> sink) throws IOException {
+        for (T item : items) {
+            sink.accept(item);
+        }
+        return next;
+    }
+
+    /** Builds the page from rows that include one more than the limit when there is a next page. */
+    private static <T> Page<T> fromFetched(ArrayList<T> fetched, PageRequest req, Function<T, String> id) {
+        if (req.getLimit() > 0 && fetched.size() > req.getLimit()) {
+            fetched.remove(fetched.size() - 1);
+            return new Page<>(fetched, id.apply(fetched.get(fetched.size() - 1)));
+        }
+        return new Page<>(fetched, null);
+    }
+
+    /**
+     * Applies the same keyset/offset/limit semantics as the SQL path to an in-memory map
+     * ordered by id: jumps straight to {@code after} and stops after limit + 1 rows.
+     */
+    public static <T> Page<T> sliceSorted(NavigableMap<String, T> source, PageRequest req, Function<T, String> id) {
+        if (req.isUnbounded()) {
+            return new Page<>(new ArrayList<>(source.values()), null);
+        }
+        NavigableMap<String, T> tail = req.getAfter() == null ? source : source.tailMap(req.getAfter(), false);
+        ArrayList<T> fetched = new ArrayList<>();
+        int skipped = 0;
+        for (T item : tail.values()) {
+            if (skipped < req.getOffset()) {
+                skipped++;
+                continue;
+            }
+            fetched.add(item);
+            if (req.getLimit() > 0 && fetched.size() > req.getLimit()) break;
+        }
+        return fromFetched(fetched, req, id);
+    }
+}
@@ -0,0 +1,66 @@
+package biblioteca;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Pagination parameters for the list queries: at most {@code limit} rows whose id is
+ * greater than {@code after} (keyset), skipping the first {@code offset} of them.
+ * A limit of 0 means no limit.
+ */
+public class PageRequest {
+    public static final int MAX_LIMIT = 1000;
+    public static final PageRequest ALL = new PageRequest(0, null, 0);
+
+    private final int limit;
+    private final String after;
+    private final int offset;
+
+    public PageRequest(int limit, String after, int offset) {
+        if (limit < 0 || offset < 0) {
+            throw new IllegalArgumentException("limit y offset no pueden ser negativos");
+        }
+        this.limit = Math.min(limit, MAX_LIMIT);
+        this.after = after == null || after.isEmpty() ? null : after;
+        this.offset = offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public String getAfter() {
+        return after;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public boolean isUnbounded() {
+        return limit == 0 && after == null && offset == 0;
+    }
+
+    /**
+     * Completes a {@code SELECT} that may already end in a {@code WHERE} clause with the
+     * keyset condition, ordering and limits. Parameters go in the order of {@link #bind}.
+     */
+    public String sql(String select, boolean hasWhere) {
+        StringBuilder sb = new StringBuilder(select);
+        if (after != null) sb.append(hasWhere ? " AND id > ?" : " WHERE id > ?");
+        sb.append(" ORDER BY id");
+        if (limit > 0) sb.append(" LIMIT ?");
+        if (offset > 0) sb.append(" OFFSET ?");
+        return sb.toString();
+    }
+
+    /**
+     * Binds the parameters added by {@link #sql} starting at {@code index}. One extra row
+     * is requested so the caller can tell whether there is a next page.
+     */
+    public void bind(PreparedStatement ps, int index) throws SQLException {
+        if (after != null) ps.setString(index++, after);
+        if (limit > 0) ps.setInt(index++, limit + 1);
+        if (offset > 0) ps.setInt(index, offset);
+    }
+}
@@ -0,0 +1,96 @@
+package biblioteca;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.function.Function;
+
+import Conexion.ConnectionPool;
+
+/**
+ * Runs the paginated list queries of the managers and hands every mapped row to a
+ * {@link RowConsumer} as soon as it is read.
+ */
+public final class PagedQuery {
+    /** Rows per round-trip; with autocommit off pgjdbc reads through a cursor instead of loading everything. */
+    public static final int FETCH_SIZE = 500;
+
+    public interface Binder {
+        /** Binds the WHERE parameters and returns the next free parameter index. */
+        int bind(PreparedStatement ps) throws SQLException;
+    }
+
+    public interface Mapper<T> {
+        T map(ResultSet resultSet) throws SQLException;
+    }
+
+    /** Builds the {@link Mapper} for one result set, once its columns are known. */
+    public interface Columns<T> {
+        Mapper<T> resolve(ResultSet resultSet) throws SQLException;
+    }
+
+    public static final Binder NO_PARAMS = ps -> 1;
+
+    private PagedQuery() {
+    }
+
+    /**
+     * Streams the rows of {@code select} (which may end in a WHERE clause when
+     * {@code hasWhere}) restricted by {@code page}, and returns the cursor of the next page.
+     */
+    public static <T> String stream(ConnectionPool pool, String select, boolean hasWhere, Binder binder,
+            PageRequest page, Columns<T> columns, Function<T, String> id, RowConsumer<T> sink)
+            throws SQLException, IOException {
+        try (Connection connection = pool.getConnection()) {
+            // the pool rolls back and restores autocommit when the connection is returned
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(page.sql(select, hasWhere))) {
+                ps.setFetchSize(FETCH_SIZE);
+                page.bind(ps, binder.bind(ps));
+                try (ResultSet resultSet = ps.executeQuery()) {
+                    Mapper<T> mapper = columns.resolve(resultSet);
+                    int count = 0;
+                    T last = null;
+                    while (resultSet.next()) {
+                        if (page.getLimit() > 0 && count == page.getLimit()) {
+                            return id.apply(last);
+                        }
+                        last = mapper.map(resultSet);
+                        sink.accept(last);
+                        count++;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Same as {@link #stream} but collects the page; SQL errors are logged like the rest of the managers. */
+    public static <T> Page<T> collect(ConnectionPool pool, String select, boolean hasWhere, Binder binder,
+            PageRequest page, Columns<T> columns, Function<T, String> id) {
+        ArrayList<T> items = new ArrayList<>();
+        String next = null;
+        try {
+            next = stream(pool, select, hasWhere, binder, page, columns, id, items::add);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Page<>(items, next);
+    }
+
+    /** Wraps {@link #stream} for callers that can only report I/O failures. */
+    public static <T> String streamOrFail(ConnectionPool pool, String select, boolean hasWhere, Binder binder,
+            PageRequest page, Columns<T> columns, Function<T, String> id, RowConsumer<T> sink) throws IOException {
+        try {
+            return stream(pool, select, hasWhere, binder, page, columns, id, sink);
+        } catch (SQLException e) {
+            throw new IOException("Error leyendo de la base de datos", e);
+        }
+    }
+}
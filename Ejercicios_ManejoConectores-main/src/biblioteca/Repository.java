@@ -0,0 +1,25 @@
+package biblioteca;
+
+import java.io.IOException;
+
+/**
+ * The CRUD operations every manager offers, under one set of names, so the server can expose
+ * an entity with generic handlers. Same conventions as the managers: failures are reported
+ * as {@code false} or {@code null}, never thrown.
+ */
+public interface Repository<T> {
+
+    /** Streams a page of rows, or all of them, in id order; returns the next page's cursor. */
+    String stream(PageRequest page, RowConsumer<T> sink) throws IOException;
+
+    T findById(String id);
+
+    boolean insert(T row);
+
+    boolean update(String id, T row);
+
+    boolean delete(String id);
+
+    /** A number that changes whenever any row does, see {@link TableVersion}. */
+    long getVersion();
+}
@@ -0,0 +1,12 @@
+package biblioteca;
+
+import java.io.IOException;
+
+/**
+ * Receives the rows of a list query one at a time, e.g. to write them straight to an
+ * HTTP response instead of collecting them first.
+ */
+@FunctionalInterface
+public interface RowConsumer<T> {
+    void accept(T row) throws IOException;
+}
@@ -0,0 +1,123 @@
+package biblioteca;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * One row mapper per entity. Each looks up the indexes of its columns once, when built for
+ * a result set, and then reads every row by index: the driver does not search the column
+ * names again for every value of every row. Dates are read as {@link LocalDate} and
+ * formatted as ISO, whatever text format the server would have used for them.
+ *
+ * Build one per result set, e.g. {@code RowMappers.Libros::new} where a
+ * {@link PagedQuery.Columns} is expected.
+ */
+final class RowMappers {
+
+    private RowMappers() {
+    }
+
+    static final class Libros implements PagedQuery.Mapper<Libro> {
+        private final int id;
+        private final int titulo;
+        private final int autor;
+        private final int isbn;
+        private final int disponible;
+
+        Libros(ResultSet resultSet) throws SQLException {
+            id = resultSet.findColumn("id");
+            titulo = resultSet.findColumn("titulo");
+            autor = resultSet.findColumn("autor");
+            isbn = resultSet.findColumn("isbn");
+            disponible = resultSet.findColumn("disponible");
+        }
+
+        @Override
+        public Libro map(ResultSet resultSet) throws SQLException {
+            return new Libro(resultSet.getString(id), resultSet.getString(titulo), resultSet.getString(autor),
+                    resultSet.getString(isbn), resultSet.getBoolean(disponible));
+        }
+    }
+
+    static final class Socios implements PagedQuery.Mapper<Socio> {
+        private final int id;
+        private final int nombre;
+        private final int apellido;
+        private final int email;
+        private final int telefono;
+        private final int fechaRegistro;
+
+        Socios(ResultSet resultSet) throws SQLException {
+            id = resultSet.findColumn("id");
+            nombre = resultSet.findColumn("nombre");
+            apellido = resultSet.findColumn("apellido");
+            email = resultSet.findColumn("email");
+            telefono = resultSet.findColumn("telefono");
+            fechaRegistro = resultSet.findColumn("fecha_registro");
+        }
+
+        @Override
+        public Socio map(ResultSet resultSet) throws SQLException {
+            return new Socio(resultSet.getString(id), resultSet.getString(nombre), resultSet.getString(apellido),
+                    resultSet.getString(email), resultSet.getString(telefono), date(resultSet, fechaRegistro));
+        }
+    }
+
+    static final class Alquileres implements PagedQuery.Mapper<Alquiler> {
+        private final int id;
+        private final int socioId;
+        private final int libroId;
+        private final int fechaAlquiler;
+        private final int fechaDevolucion;
+        private final int estado;
+
+        Alquileres(ResultSet resultSet) throws SQLException {
+            id = resultSet.findColumn("id");
+            socioId = resultSet.findColumn("socio_id");
+            libroId = resultSet.findColumn("libro_id");
+            fechaAlquiler = resultSet.findColumn("fecha_alquiler");
+            fechaDevolucion = resultSet.findColumn("fecha_devolucion");
+            estado = resultSet.findColumn("estado");
+        }
+
+        @Override
+        public Alquiler map(ResultSet resultSet) throws SQLException {
+            return new Alquiler(resultSet.getString(id), resultSet.getString(socioId), resultSet.getString(libroId),
+                    date(resultSet, fechaAlquiler), date(resultSet, fechaDevolucion), resultSet.getString(estado));
+        }
+    }
+
+    static final class Empleados implements PagedQuery.Mapper<Empleado> {
+        private final int id;
+        private final int nombre;
+        private final int apellido;
+        private final int email;
+        private final int puesto;
+        private final int salario;
+        private final int fechaContratacion;
+
+        Empleados(ResultSet resultSet) throws SQLException {
+            id = resultSet.findColumn("id");
+            nombre = resultSet.findColumn("nombre");
+            apellido = resultSet.findColumn("apellido");
+            email = resultSet.findColumn("email");
+            puesto = resultSet.findColumn("puesto");
+            salario = resultSet.findColumn("salario");
+            fechaContratacion = resultSet.findColumn("fecha_contratacion");
+        }
+
+        @Override
+        public Empleado map(ResultSet resultSet) throws SQLException {
+            // salario is a VARCHAR column: its text is the value
+            return new Empleado(resultSet.getString(id), resultSet.getString(nombre), resultSet.getString(apellido),
+                    resultSet.getString(email), resultSet.getString(puesto), resultSet.getString(salario),
+                    date(resultSet, fechaContratacion));
+        }
+    }
+
+    private static String date(ResultSet resultSet, int column) throws SQLException {
+        LocalDate date = resultSet.getObject(column, LocalDate.class);
+        return date == null ? null : date.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package biblioteca;
+
+import java.io.IOException;
+
+/** Pull-style supplier of numbered rows for bulk imports. */
+@FunctionalInterface
+public interface RowSource<T> {
+
+    /** Returns the next row, or null when there are no more. */
+    Row<T> next() throws IOException;
+
+    /** A parsed row and the line of the input it came from, for error reports. */
+    final class Row<T> {
+        private final long line;
+        private final T value;
+
+        public Row(long line, T value) {
+            this.line = line;
+            this.value = value;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package biblioteca;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic change counter of one table, used by the server as the ETag of the table's list
+ * and by-id responses. Writers bump it after their change is committed, so a reader that sees
+ * the new version also sees the new rows.
+ *
+ * It only counts changes made through this process. It starts from the clock rather than
+ * from zero so a restarted server does not hand out a tag it already used for other data.
+ */
+public final class TableVersion {
+    private final AtomicLong value = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    public long get() {
+        return value.get();
+    }
+
+    public void bump() {
+        value.incrementAndGet();
+    }
+
+    /** Bumps when {@code changed} and returns it, for the write methods' return statements. */
+    public boolean changed(boolean changed) {
+        if (changed) value.incrementAndGet();
+        return changed;
+    }
+}
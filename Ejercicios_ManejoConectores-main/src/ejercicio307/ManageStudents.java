@@ -1,79 +1,87 @@
 package ejercicio307;
 
-import java.sql.Statement;
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Scanner;
 
-public class ManageStudents {
-    private Connection connection;
-    private PreparedStatement ps;
-    private Statement statement;
-    private ResultSet resultSet;
-
-    private int numFilasAfectadas;
-    private ArrayList<Student> students;
-    private Student student;
-    private String query;
-    private Scanner sc;
-    private boolean useDatabase = false; // Flag to indicate if database is available
+import Conexion.ConnectionPool;
+import biblioteca.MemoryStore;
+import biblioteca.Page;
+import biblioteca.PageRequest;
+import biblioteca.PagedQuery;
+import biblioteca.Repository;
+import biblioteca.RowConsumer;
+import biblioteca.TableVersion;
+
+public class ManageStudents implements Repository<Student> {
+    private static final String INSERT = "INSERT INTO STUDENT VALUES(?,?,?,?)";
+    private static final String SELECT_ALL = "SELECT * FROM STUDENT";
+    private static final String SELECT_BY_ID = "SELECT * FROM STUDENT WHERE ID = ?";
+    private static final String DELETE = "DELETE FROM STUDENT WHERE ID = ?";
+    private static final String UPDATE = "UPDATE STUDENT SET ID = ?, NAME = ?, SURNAME = ?, AGE = ? WHERE ID = ?";
+
+    private volatile ConnectionPool pool;
+    private volatile boolean ownsPool = false;
+    private volatile boolean useDatabase = false; // Flag to indicate if database is available
+    private final MemoryStore<Student> students = new MemoryStore<>(Student::getId);
+    private final TableVersion version = new TableVersion();
 
     public ManageStudents() {
-        students = new ArrayList<>();
         // Initialize with sample data
-        students.add(new Student("s001", "Juan", "García", 20));
-        students.add(new Student("s002", "María", "López", 21));
-        students.add(new Student("s003", "Carlos", "Martínez", 22));
+        students.insert(new Student("s001", "Juan", "García", 20));
+        students.insert(new Student("s002", "María", "López", 21));
+        students.insert(new Student("s003", "Carlos", "Martínez", 22));
     }
 
     public void openConnection(String bd, String server, String user, String password) {
         try {
             String url = String.format("jdbc:mysql://%s:3306/%s", server, bd);
-            this.connection = DriverManager.getConnection(url, user, password);
-            if (connection != null) {
-                useDatabase = true;
-                System.out.println("Conectado a base de datos");
-            } else {
-                useDatabase = false;
-                System.out.println("No se ha podido conectar, usando almacenamiento en memoria");
-            }
+            openConnection(new ConnectionPool(url, user, password, 1, 1, 5000, 300000, 2));
+            ownsPool = true;
         } catch (SQLException e) {
             useDatabase = false;
             System.out.println("No se pudo conectar a base de datos, usando almacenamiento en memoria");
         }
     }
 
+    public void openConnection(ConnectionPool pool) {
+        this.pool = pool;
+        useDatabase = true;
+        System.out.println("Conectado a base de datos");
+        version.bump();
+    }
+
+    /** Changes with every write to students. */
+    public long getVersion() {
+        return version.get();
+    }
+
     public void closeConnection() {
-        if (connection != null) {
-            try {
-                this.connection.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+        if (pool != null && ownsPool) {
+            pool.close();
         }
     }
 
     public boolean addStudent(Student student) {
         // If no database, use in-memory storage
         if (!useDatabase) {
-            students.add(student);
-            return true;
+            return version.changed(students.insert(student));
         }
 
         // Otherwise use JDBC
-        query = "INSERT INTO STUDENT VALUES(?,?,?,?)";
-        try {
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(INSERT)) {
             ps.setString(1, student.getId());
             ps.setString(2, student.getName());
             ps.setString(3, student.getSurname());
             ps.setInt(4, student.getAge());
-            numFilasAfectadas = ps.executeUpdate();
+            int numFilasAfectadas = ps.executeUpdate();
             System.out.println("Filas afectadas = " + numFilasAfectadas);
+            version.bump();
             return true;
         } catch (SQLException e) {
             e.printStackTrace();
@@ -82,63 +90,54 @@ public class ManageStudents {
     }
 
     public ArrayList<Student> getStudents() {
+        return getStudents(PageRequest.ALL).getItems();
+    }
+
+    public Page<Student> getStudents(PageRequest page) {
         if (!useDatabase) {
-            return new ArrayList<>(students);
+            return students.page(page);
         }
+        return PagedQuery.collect(pool, SELECT_ALL, false, PagedQuery.NO_PARAMS, page, resultSet -> ManageStudents::mapStudent, Student::getId);
+    }
 
-        students = new ArrayList<Student>();
-        try {
-            query = "SELECT * FROM STUDENT;";
-            ps = connection.prepareStatement(query);
-            resultSet = ps.executeQuery();
-            while (resultSet.next()) {
-                student = new Student(resultSet.getString(1), resultSet.getString(2), resultSet.getString(3),
-                        resultSet.getInt(4));
-                students.add(student);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+    /** Streams a page of students to {@code sink} and returns the cursor of the next page. */
+    public String streamStudents(PageRequest page, RowConsumer<Student> sink) throws IOException {
+        if (!useDatabase) {
+            return students.page(page).forEach(sink);
         }
-        return students;
+        return PagedQuery.streamOrFail(pool, SELECT_ALL, false, PagedQuery.NO_PARAMS, page, resultSet -> ManageStudents::mapStudent, Student::getId, sink);
     }
 
     public Student getStudent(String id) {
         if (!useDatabase) {
-            return students.stream().filter(s -> s.getId().equals(id)).findFirst().orElse(null);
+            return students.get(id);
         }
 
-        query = "SELECT * FROM STUDENT WHERE ID=?";
-        try {
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(SELECT_BY_ID)) {
             ps.setString(1, id);
-            resultSet = ps.executeQuery();
-            int columns = resultSet.getMetaData().getColumnCount();
-            while (resultSet.next()) {
-                student = new Student(resultSet.getString(1), resultSet.getString(2), resultSet.getString(3),
-                        resultSet.getInt(4));
-                return student;
+            try (ResultSet resultSet = ps.executeQuery()) {
+                if (resultSet.next()) {
+                    return mapStudent(resultSet);
+                }
             }
-            System.out.println("Filas afectadas = " + numFilasAfectadas);
-
         } catch (SQLException e) {
-            // TODO Auto-generated catch block
             e.printStackTrace();
-
         }
-        return student;
+        return null;
     }
 
     public boolean deleteStudent(String id) {
         if (!useDatabase) {
-            return students.removeIf(s -> s.getId().equals(id));
+            return version.changed(students.remove(id) != null);
         }
 
-        query = "DELETE FROM STUDENT WHERE ID= ?";
-        try {
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(DELETE)) {
             ps.setString(1, id);
-            numFilasAfectadas = ps.executeUpdate();
+            int numFilasAfectadas = ps.executeUpdate();
             System.out.println("Filas afectadas = " + numFilasAfectadas);
+            version.bump();
             return true;
         } catch (SQLException e) {
             e.printStackTrace();
@@ -147,28 +146,12 @@ public class ManageStudents {
     }
 
     boolean modifyStudent() {
-        sc = new Scanner(System.in);
+        Scanner sc = new Scanner(System.in);
         System.out.println("Introduce id del estudiante a modificar :");
         String id = sc.nextLine();
-        student = createStudent();
-        query = "UPDATE STUDENT SET ID = ?,NAME = ?, SURNAME= ?,AGE =? WHERE ID=?";
-
-        try {
-            System.out.println("Modificando usuario... ");
-            ps = connection.prepareStatement(query);
-            ps.setString(1, student.getId());
-            ps.setString(2, student.getName());
-            ps.setString(3, student.getSurname());
-            ps.setInt(4, student.getAge());
-            ps.setString(5, id);
-            numFilasAfectadas = ps.executeUpdate();
-            System.out.println("Filas afectadas = " + numFilasAfectadas);
-            return true;
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+        Student student = createStudent();
+        System.out.println("Modificando usuario... ");
+        return modifyStudent(id, student);
     }
 
     /**
@@ -176,29 +159,23 @@ public class ManageStudents {
      */
     public boolean modifyStudent(String id, Student newStudent) {
         if (!useDatabase) {
-            // Update in-memory storage
-            for (int i = 0; i < students.size(); i++) {
-                if (students.get(i).getId().equals(id)) {
-                    // Keep original ID if 'from' id parameter is different
-                    newStudent.setId(newStudent.getId() != null && !newStudent.getId().isEmpty() ? newStudent.getId() : id);
-                    students.set(i, newStudent);
-                    return true;
-                }
+            // Update in-memory storage, keeping the original ID when the new data has none
+            if (newStudent.getId() == null || newStudent.getId().isEmpty()) {
+                newStudent.setId(id);
             }
-            return false;
+            return version.changed(students.update(id, old -> newStudent) != null);
         }
 
-        query = "UPDATE STUDENT SET ID = ?, NAME = ?, SURNAME = ?, AGE = ? WHERE ID = ?";
-        try {
-            ps = connection.prepareStatement(query);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(UPDATE)) {
             ps.setString(1, newStudent.getId());
             ps.setString(2, newStudent.getName());
             ps.setString(3, newStudent.getSurname());
             ps.setInt(4, newStudent.getAge());
             ps.setString(5, id);
-            numFilasAfectadas = ps.executeUpdate();
+            int numFilasAfectadas = ps.executeUpdate();
             System.out.println("Filas afectadas = " + numFilasAfectadas);
-            return numFilasAfectadas > 0;
+            return version.changed(numFilasAfectadas > 0);
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -206,18 +183,17 @@ public class ManageStudents {
     }
 
     Student createStudent() {
-        sc = new Scanner(System.in);
-        String id, name, surname;
-        int age;
+        Scanner sc = new Scanner(System.in);
+        Student student = null;
         try {
             System.out.println("Introduce id");
-            id = sc.nextLine();
+            String id = sc.nextLine();
             System.out.println("Introduce nombre");
-            name = sc.nextLine();
+            String name = sc.nextLine();
             System.out.println("Introduce apellido");
-            surname = sc.nextLine();
+            String surname = sc.nextLine();
             System.out.println("Introduce edad");
-            age = sc.nextInt();
+            int age = sc.nextInt();
             student = new Student(id, name, surname, age);
         } catch (Exception e) {
             e.printStackTrace();
@@ -226,4 +202,35 @@ public class ManageStudents {
 
     }
 
+    private static Student mapStudent(ResultSet resultSet) throws SQLException {
+        return new Student(resultSet.getString(1), resultSet.getString(2), resultSet.getString(3),
+                resultSet.getInt(4));
+    }
+
+    // Repository
+
+    @Override
+    public String stream(PageRequest page, RowConsumer<Student> sink) throws IOException {
+        return streamStudents(page, sink);
+    }
+
+    @Override
+    public Student findById(String id) {
+        return getStudent(id);
+    }
+
+    @Override
+    public boolean insert(Student row) {
+        return addStudent(row);
+    }
+
+    @Override
+    public boolean update(String id, Student row) {
+        return modifyStudent(id, row);
+    }
+
+    @Override
+    public boolean delete(String id) {
+        return deleteStudent(id);
+    }
 }
@@ -0,0 +1,85 @@
+package metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with fixed buckets, written in Prometheus' histogram format: latencies recorded
+ * in nanoseconds and written in seconds, or sizes in bytes. Recording is a short scan over
+ * the bounds and two {@link LongAdder} increments, so it allocates nothing and threads
+ * recording at once do not contend on a single counter.
+ */
+public final class Histogram {
+    /** Bucket upper bounds in seconds: Prometheus' defaults plus finer steps below 5 ms. */
+    static final double[] BOUNDS = { 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1,
+            0.25, 0.5, 1, 2.5, 5, 10 };
+    /** Bucket upper bounds in bytes, by powers of four from 64 B to 16 MiB. */
+    static final double[] BYTE_BOUNDS = { 64, 256, 1024, 4096, 16384, 65536, 262144, 1048576, 4194304, 16777216 };
+
+    private final double[] bounds;
+    private final long[] scaledBounds;
+    // recorded units per written unit: nanoseconds per second, or 1 for bytes
+    private final double scale;
+    // the last bucket is +Inf
+    private final LongAdder[] buckets;
+    private final LongAdder sum = new LongAdder();
+
+    /** A latency histogram: {@link #record} takes nanoseconds. */
+    public Histogram() {
+        this(BOUNDS, TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private Histogram(double[] bounds, double scale) {
+        this.bounds = bounds;
+        this.scale = scale;
+        scaledBounds = new long[bounds.length];
+        for (int i = 0; i < bounds.length; i++) {
+            scaledBounds[i] = (long) (bounds[i] * scale);
+        }
+        buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /** A size histogram: {@link #record} takes bytes. */
+    public static Histogram ofBytes() {
+        return new Histogram(BYTE_BOUNDS, 1);
+    }
+
+    public void record(long value) {
+        int i = 0;
+        while (i < scaledBounds.length && value > scaledBounds[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        sum.add(value);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Appends the {@code _bucket}, {@code _sum} and {@code _count} series of {@code name};
+     * {@code labels} is either empty or a list like {@code route="/api/libros"}.
+     */
+    void write(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            String le = i < bounds.length ? Metrics.number(bounds[i]) : "+Inf";
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braces).append(' ')
+                .append(Metrics.number(sum.sum() / scale)).append('\n');
+        out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+    }
+}
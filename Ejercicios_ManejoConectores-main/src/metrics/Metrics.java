@@ -0,0 +1,151 @@
+package metrics;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide metrics registry, written out in the Prometheus text format by the server's
+ * {@code /metrics} endpoint.
+ *
+ * HTTP routes are registered once when the server starts. SQL timings are kept per query
+ * shape, that is per SQL text as prepared (values travel as parameters, so the text does not
+ * change between calls); the pool records them for every statement it hands out.
+ */
+public final class Metrics {
+    /** Beyond this many distinct SQL texts new ones are folded into a single "other" series. */
+    static final int MAX_QUERY_SHAPES = 500;
+    static final String OTHER_QUERY = "other";
+
+    public static final Histogram POOL_WAIT = new Histogram();
+    public static final LongAdder POOL_TIMEOUTS = new LongAdder();
+    public static final Histogram COMPRESSION_TIME = new Histogram();
+    public static final LongAdder COMPRESSION_IN = new LongAdder();
+    public static final LongAdder COMPRESSION_OUT = new LongAdder();
+    public static final LongAdder STATEMENT_CACHE_HITS = new LongAdder();
+    public static final LongAdder STATEMENT_CACHE_MISSES = new LongAdder();
+    public static final LongAdder STATEMENT_CACHE_EVICTIONS = new LongAdder();
+
+    private static final Map<String, RouteMetrics> ROUTES = new ConcurrentSkipListMap<>();
+    private static final Map<String, Histogram> QUERIES = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static RouteMetrics route(String route) {
+        return ROUTES.computeIfAbsent(route, RouteMetrics::new);
+    }
+
+    /** The histogram for one SQL text, created on its first execution. */
+    public static Histogram query(String sql) {
+        Histogram histogram = QUERIES.get(sql);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (QUERIES.size() >= MAX_QUERY_SHAPES) {
+            sql = OTHER_QUERY;
+        }
+        return QUERIES.computeIfAbsent(sql, k -> new Histogram());
+    }
+
+    /** Appends every HTTP, SQL and pool series. */
+    public static void write(StringBuilder out) {
+        out.append("# HELP http_requests_total Requests handled, by route and status code.\n");
+        out.append("# TYPE http_requests_total counter\n");
+        for (RouteMetrics route : ROUTES.values()) {
+            route.writeRequests(out, routeLabel(route));
+        }
+        out.append("# HELP http_request_duration_seconds Time from the request reaching its route to the response being written.\n");
+        out.append("# TYPE http_request_duration_seconds histogram\n");
+        for (RouteMetrics route : ROUTES.values()) {
+            route.getLatency().write(out, "http_request_duration_seconds", routeLabel(route));
+        }
+        out.append("# HELP http_request_bytes_total Request body bytes read.\n");
+        out.append("# TYPE http_request_bytes_total counter\n");
+        for (RouteMetrics route : ROUTES.values()) {
+            sample(out, "http_request_bytes_total", routeLabel(route), route.getBytesIn());
+        }
+        out.append("# HELP http_request_body_bytes Size of each request body that was read, by route.\n");
+        out.append("# TYPE http_request_body_bytes histogram\n");
+        for (RouteMetrics route : ROUTES.values()) {
+            route.getRequestSize().write(out, "http_request_body_bytes", routeLabel(route));
+        }
+        out.append("# HELP http_response_bytes_total Response body bytes written after compression, before chunking.\n");
+        out.append("# TYPE http_response_bytes_total counter\n");
+        for (RouteMetrics route : ROUTES.values()) {
+            sample(out, "http_response_bytes_total", routeLabel(route), route.getBytesOut());
+        }
+        out.append("# HELP http_response_compression_seconds Time spent deflating each compressed response body.\n");
+        out.append("# TYPE http_response_compression_seconds histogram\n");
+        COMPRESSION_TIME.write(out, "http_response_compression_seconds", "");
+        out.append("# HELP http_response_compression_input_bytes_total Response bytes given to the compressor.\n");
+        out.append("# TYPE http_response_compression_input_bytes_total counter\n");
+        sample(out, "http_response_compression_input_bytes_total", "", COMPRESSION_IN.sum());
+        out.append("# HELP http_response_compression_output_bytes_total Compressed response bytes, framing included.\n");
+        out.append("# TYPE http_response_compression_output_bytes_total counter\n");
+        sample(out, "http_response_compression_output_bytes_total", "", COMPRESSION_OUT.sum());
+        long compressed = COMPRESSION_OUT.sum();
+        gauge(out, "http_response_compression_ratio", "Input over output bytes of every compressed response so far.", "",
+                compressed == 0 ? 0 : (double) COMPRESSION_IN.sum() / compressed);
+
+        out.append("# HELP db_query_duration_seconds Statement execution time by SQL text; for queries, until the first rows are available.\n");
+        out.append("# TYPE db_query_duration_seconds histogram\n");
+        for (Map.Entry<String, Histogram> query : new ConcurrentSkipListMap<>(QUERIES).entrySet()) {
+            query.getValue().write(out, "db_query_duration_seconds", "query=\"" + escape(shape(query.getKey())) + "\"");
+        }
+        out.append("# HELP db_pool_wait_seconds Time spent waiting for a free pool connection.\n");
+        out.append("# TYPE db_pool_wait_seconds histogram\n");
+        POOL_WAIT.write(out, "db_pool_wait_seconds", "");
+        out.append("# HELP db_pool_timeouts_total Connection requests that gave up waiting for the pool.\n");
+        out.append("# TYPE db_pool_timeouts_total counter\n");
+        sample(out, "db_pool_timeouts_total", "", POOL_TIMEOUTS.sum());
+        out.append("# HELP db_statement_cache_requests_total prepareStatement calls answered from the connection's statement cache or not.\n");
+        out.append("# TYPE db_statement_cache_requests_total counter\n");
+        sample(out, "db_statement_cache_requests_total", "result=\"hit\"", STATEMENT_CACHE_HITS.sum());
+        sample(out, "db_statement_cache_requests_total", "result=\"miss\"", STATEMENT_CACHE_MISSES.sum());
+        out.append("# HELP db_statement_cache_evictions_total Cached statements closed to make room for other SQL texts.\n");
+        out.append("# TYPE db_statement_cache_evictions_total counter\n");
+        sample(out, "db_statement_cache_evictions_total", "", STATEMENT_CACHE_EVICTIONS.sum());
+        long lookups = STATEMENT_CACHE_HITS.sum() + STATEMENT_CACHE_MISSES.sum();
+        gauge(out, "db_statement_cache_hit_ratio", "Share of prepareStatement calls answered from the cache so far.", "",
+                lookups == 0 ? 0 : (double) STATEMENT_CACHE_HITS.sum() / lookups);
+    }
+
+    /** Appends a gauge with its HELP and TYPE lines. */
+    public static void gauge(StringBuilder out, String name, String help, String labels, double value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        sample(out, name, labels, value);
+    }
+
+    /** Appends one more sample of a series whose HELP and TYPE were already written. */
+    public static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(number(value)).append('\n');
+    }
+
+    public static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String routeLabel(RouteMetrics route) {
+        return "route=\"" + escape(route.getRoute()) + "\"";
+    }
+
+    /** SQL text on a single line, as it appears in the {@code query} label. */
+    static String shape(String sql) {
+        return sql.trim().replaceAll("\\s+", " ");
+    }
+
+    static String number(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.isFinite(value) ? BigDecimal.valueOf(value).stripTrailingZeros().toPlainString() : Double.toString(value);
+    }
+}
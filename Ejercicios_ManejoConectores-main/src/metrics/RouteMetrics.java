@@ -0,0 +1,74 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What is recorded for one HTTP context: requests by status code, latency, body bytes and
+ * the size of each request body.
+ * Instances are created once per route when the server registers it, so recording a request
+ * does no lookup.
+ */
+public final class RouteMetrics {
+    private final String route;
+    // one counter per status code, created the first time the code is seen
+    private final AtomicReferenceArray<LongAdder> statuses = new AtomicReferenceArray<>(600);
+    private final Histogram latency = new Histogram();
+    private final LongAdder bytesIn = new LongAdder();
+    // requests that sent no body are left out, or GETs would fill the first bucket
+    private final Histogram requestSize = Histogram.ofBytes();
+    private final LongAdder bytesOut = new LongAdder();
+
+    RouteMetrics(String route) {
+        this.route = route;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public void record(int status, long nanos, long in, long out) {
+        int code = status >= 100 && status < 600 ? status : 500;
+        LongAdder counter = statuses.get(code);
+        if (counter == null) {
+            statuses.compareAndSet(code, null, new LongAdder());
+            counter = statuses.get(code);
+        }
+        counter.increment();
+        latency.record(nanos);
+        bytesIn.add(in);
+        if (in > 0) requestSize.record(in);
+        bytesOut.add(out);
+    }
+
+    public long getRequests(int status) {
+        LongAdder counter = statuses.get(status);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    void writeRequests(StringBuilder out, String labels) {
+        for (int code = 100; code < 600; code++) {
+            LongAdder counter = statuses.get(code);
+            if (counter != null) {
+                out.append("http_requests_total{").append(labels).append(",code=\"").append(code).append("\"} ")
+                        .append(counter.sum()).append('\n');
+            }
+        }
+    }
+
+    Histogram getLatency() {
+        return latency;
+    }
+
+    Histogram getRequestSize() {
+        return requestSize;
+    }
+
+    long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    long getBytesOut() {
+        return bytesOut.sum();
+    }
+}
@@ -0,0 +1,160 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import biblioteca.BulkResult;
+import biblioteca.RowSource;
+
+/**
+ * Parses a bulk import body line by line, as NDJSON (one JSON object per line) or as CSV
+ * whose header row names the JSON properties. Lines that do not parse, or rows without an
+ * id, are reported to the {@link BulkResult} and skipped, so the rest still get imported.
+ *
+ * CSV fields may be quoted with {@code "} (doubling it inside), and a quoted field may span
+ * several lines, as {@link CsvRowWriter} and PostgreSQL's COPY write them; errors are
+ * reported at the record's first line. An empty field is left out of the row.
+ */
+final class BulkReader<T> implements RowSource<T> {
+    static final String NDJSON = "ndjson";
+    static final String CSV = "csv";
+    /** A quoted field still open after this many characters is taken as a stray quote. */
+    static final int MAX_RECORD_CHARS = 1 << 20;
+
+    private final BufferedReader reader;
+    private final boolean csv;
+    private final ObjectMapper mapper;
+    private final Class<T> type;
+    private final ObjectReader rowReader;
+    private final Function<T, String> id;
+    private final BulkResult result;
+    private String[] header;
+    private long line;
+
+    BulkReader(InputStream in, String format, ObjectMapper mapper, Class<T> type, Function<T, String> id, BulkResult result) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.csv = CSV.equals(format);
+        this.mapper = mapper;
+        this.type = type;
+        this.rowReader = mapper.readerFor(type);
+        this.id = id;
+        this.result = result;
+    }
+
+    @Override
+    public Row<T> next() throws IOException {
+        String text;
+        while ((text = reader.readLine()) != null) {
+            long first = ++line;
+            if (text.isBlank()) continue;
+            try {
+                if (csv) {
+                    text = record(text);
+                    if (header == null) {
+                        header = split(text).toArray(new String[0]);
+                        continue;
+                    }
+                }
+                T value = csv ? fromCsv(text) : rowReader.readValue(text);
+                if (value == null) {
+                    // a literal null line
+                    result.failed(first, "not an object");
+                    continue;
+                }
+                String key = id.apply(value);
+                if (key == null || key.isEmpty()) {
+                    result.failed(first, "missing id");
+                    continue;
+                }
+                return new Row<>(first, value);
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                String message = e instanceof JsonProcessingException
+                        ? ((JsonProcessingException) e).getOriginalMessage() : e.getMessage();
+                result.failed(first, message);
+            }
+        }
+        return null;
+    }
+
+    /** Joins the lines that follow {@code text} while one of its quoted fields is still open. */
+    private String record(String text) throws IOException {
+        if (!openQuote(text)) return text;
+        StringBuilder record = new StringBuilder(text);
+        String more;
+        while ((more = reader.readLine()) != null) {
+            line++;
+            record.append('\n').append(more);
+            if (!openQuote(record)) return record.toString();
+            if (record.length() > MAX_RECORD_CHARS) {
+                throw new IllegalArgumentException("unterminated quoted field");
+            }
+        }
+        return record.toString();
+    }
+
+    /** True when the quotes do not pair up: a doubled quote inside a field counts twice. */
+    private static boolean openQuote(CharSequence text) {
+        boolean open = false;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"') open = !open;
+        }
+        return open;
+    }
+
+    private T fromCsv(String text) throws JsonProcessingException {
+        List<String> fields = split(text);
+        if (fields.size() != header.length) {
+            throw new IllegalArgumentException("expected " + header.length + " fields, found " + fields.size());
+        }
+        ObjectNode node = mapper.createObjectNode();
+        for (int i = 0; i < header.length; i++) {
+            if (!fields.get(i).isEmpty()) {
+                node.put(header[i], fields.get(i));
+            }
+        }
+        return mapper.treeToValue(node, type);
+    }
+
+    /** Splits one CSV record on commas, honouring double-quoted fields. */
+    static List<String> split(String text) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+}
@@ -0,0 +1,280 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import metrics.Metrics;
+
+/**
+ * Negotiated gzip/deflate for the JSON API. Bodies under {@code compression.minBytes} go out
+ * as they are, since the headers and the deflate framing cost more than they save.
+ *
+ * Deflaters own native zlib memory that is only freed by {@link Deflater#end()}, so they are
+ * reset and reused from a bounded pool rather than created per response. A pool instead of a
+ * ThreadLocal keeps the number bounded under the virtual thread executor, where every request
+ * has a thread of its own.
+ *
+ * Only the time inside {@link Deflater#deflate} is recorded, not the socket writes around it.
+ */
+final class Compression {
+    static final int DEFAULT_MIN_BYTES = 1024;
+    private static final int MAX_POOLED = 64;
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private static volatile int minBytes = DEFAULT_MIN_BYTES;
+    private static volatile int level = Deflater.DEFAULT_COMPRESSION;
+    // raw deflate for gzip, which adds its own header and trailer; zlib-wrapped for deflate
+    private static final BlockingQueue<Deflater> RAW = new ArrayBlockingQueue<>(MAX_POOLED);
+    private static final BlockingQueue<Deflater> ZLIB = new ArrayBlockingQueue<>(MAX_POOLED);
+
+    private Compression() {
+    }
+
+    /** {@code minBytes < 0} turns compression off. */
+    static void configure(int minBytes, int level) {
+        Compression.minBytes = minBytes;
+        Compression.level = level;
+        drain(RAW);
+        drain(ZLIB);
+    }
+
+    static int getMinBytes() {
+        return minBytes;
+    }
+
+    /** The coding to answer with, gzip preferred, or null for identity. */
+    static String negotiate(HttpExchange exchange) {
+        if (minBytes < 0) return null;
+        if (WebServer.acceptsGzip(exchange)) return "gzip";
+        if (WebServer.acceptsEncoding(exchange, "deflate")) return "deflate";
+        return null;
+    }
+
+    /**
+     * Sends a complete body, compressed when it is big enough and the client accepts it.
+     * The Content-Type is already set.
+     */
+    static void send(HttpExchange exchange, int status, byte[] bytes) throws IOException {
+        WebServer.vary(exchange, "Accept-Encoding");
+        String encoding = minBytes >= 0 && bytes.length >= minBytes ? negotiate(exchange) : null;
+        if (encoding != null) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            try (DeflatingStream deflating = new DeflatingStream(buffer, encoding)) {
+                deflating.write(bytes, 0, bytes.length);
+            }
+            bytes = buffer.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * A body of unknown length. The first {@code minBytes} are held back: a body that ends
+     * before that is sent with a Content-Length and uncompressed, a longer one is sent
+     * chunked and compressed if the client accepts it. The headers go out on the first
+     * overflow or on close. A handler that fails calls {@link ResponseStream#abort()} instead
+     * of closing it: before the overflow nothing has been sent and it can still answer 500.
+     */
+    static ResponseStream stream(HttpExchange exchange, int status) {
+        WebServer.vary(exchange, "Accept-Encoding");
+        return new ResponseStream(exchange, status);
+    }
+
+    private static Deflater acquire(boolean raw) {
+        Deflater deflater = (raw ? RAW : ZLIB).poll();
+        return deflater != null ? deflater : new Deflater(level, raw);
+    }
+
+    private static void release(Deflater deflater, boolean raw) {
+        deflater.reset();
+        if (!(raw ? RAW : ZLIB).offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private static void drain(BlockingQueue<Deflater> pool) {
+        Deflater deflater;
+        while ((deflater = pool.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    static final class ResponseStream extends OutputStream {
+        private final HttpExchange exchange;
+        private final int status;
+        private byte[] held = new byte[Math.max(minBytes, 0)];
+        private int count;
+        private OutputStream out;
+        private boolean aborted;
+
+        ResponseStream(HttpExchange exchange, int status) {
+            this.exchange = exchange;
+            this.status = status;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (aborted) return;
+            if (out == null) {
+                if (count + len < held.length) {
+                    System.arraycopy(b, off, held, count, len);
+                    count += len;
+                    return;
+                }
+                start();
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // held bytes stay held: flushing them would commit to identity and chunked
+            if (out != null && !aborted) out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (aborted) return;
+            if (out == null) {
+                exchange.sendResponseHeaders(status, count == 0 ? -1 : count);
+                out = exchange.getResponseBody();
+                out.write(held, 0, count);
+            }
+            held = null;
+            out.close();
+        }
+
+        /**
+         * Gives the body up: later writes and close do nothing. If the headers are still
+         * unsent they stay so; if not, the body is left unterminated, without the last chunk
+         * or the gzip trailer, and the caller has to drop the connection so the client does
+         * not take what it got for a whole response.
+         */
+        void abort() {
+            if (aborted) return;
+            aborted = true;
+            held = null;
+            if (out instanceof DeflatingStream) ((DeflatingStream) out).abort();
+        }
+
+        private void start() throws IOException {
+            String encoding = minBytes >= 0 ? negotiate(exchange) : null;
+            if (encoding != null) exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            exchange.sendResponseHeaders(status, 0);
+            out = exchange.getResponseBody();
+            if (encoding != null) out = new DeflatingStream(out, encoding);
+            out.write(held, 0, count);
+            held = null;
+        }
+    }
+
+    /** gzip or zlib output over a pooled Deflater; closing it returns the Deflater. */
+    static final class DeflatingStream extends OutputStream {
+        private final OutputStream out;
+        private final boolean gzip;
+        private final CRC32 crc;
+        private final byte[] buffer = new byte[8192];
+        private Deflater deflater;
+        private long in;
+        private long written;
+        private long nanos;
+
+        DeflatingStream(OutputStream out, String encoding) throws IOException {
+            this.out = out;
+            this.gzip = encoding.equals("gzip");
+            this.crc = gzip ? new CRC32() : null;
+            this.deflater = acquire(gzip);
+            if (gzip) {
+                out.write(GZIP_HEADER);
+                written += GZIP_HEADER.length;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return;
+            if (gzip) crc.update(b, off, len);
+            in += len;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            deflate(Deflater.SYNC_FLUSH);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (deflater == null) return;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(Deflater.NO_FLUSH);
+                }
+                if (gzip) {
+                    writeIntLE((int) crc.getValue());
+                    writeIntLE((int) in);
+                }
+            } finally {
+                release(deflater, gzip);
+                deflater = null;
+                Metrics.COMPRESSION_TIME.record(nanos);
+                Metrics.COMPRESSION_IN.add(in);
+                Metrics.COMPRESSION_OUT.add(written);
+            }
+            out.close();
+        }
+
+        /** Returns the Deflater without finishing the stream. */
+        void abort() {
+            if (deflater == null) return;
+            release(deflater, gzip);
+            deflater = null;
+        }
+
+        private void deflate(int flush) throws IOException {
+            int n;
+            do {
+                long start = System.nanoTime();
+                n = deflater.deflate(buffer, 0, buffer.length, flush);
+                nanos += System.nanoTime() - start;
+                if (n > 0) {
+                    out.write(buffer, 0, n);
+                    written += n;
+                }
+            } while (n == buffer.length);
+        }
+
+        private void writeIntLE(int value) throws IOException {
+            out.write(value);
+            out.write(value >>> 8);
+            out.write(value >>> 16);
+            out.write(value >>> 24);
+            written += 4;
+        }
+    }
+}
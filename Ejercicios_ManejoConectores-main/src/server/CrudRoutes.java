@@ -0,0 +1,74 @@
+package server;
+
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import biblioteca.Repository;
+
+/**
+ * The five standard routes of an entity, served from its {@link Repository}:
+ * {@code GET base} (list, paginated on demand), {@code POST base}, and {@code GET}, {@code PUT}
+ * and {@code DELETE base/{id}}. The repository is fetched on every request, so the routes
+ * follow {@link WebServer#connectManagers} swapping the managers. Both GETs are tagged with
+ * the repository's version and answer a matching If-None-Match with 304.
+ */
+final class CrudRoutes<T> {
+    private final JsonCodec<T> json;
+    private final Function<T, String> id;
+    private final BiConsumer<T, String> setId;
+    private final Supplier<? extends Repository<T>> repository;
+
+    /** {@code setId} fills in a random id on POST when the body has none; null leaves it empty. */
+    CrudRoutes(Class<T> type, Function<T, String> id, BiConsumer<T, String> setId, Supplier<? extends Repository<T>> repository) {
+        this.json = JsonCodec.of(type);
+        this.id = id;
+        this.setId = setId;
+        this.repository = repository;
+    }
+
+    void register(Router router, String base) {
+        router.get(base, this::list);
+        router.post(base, this::create);
+        router.get(base + "/{id}", this::get);
+        router.put(base + "/{id}", this::update);
+        router.delete(base + "/{id}", this::delete);
+    }
+
+    private void list(HttpExchange exchange, String[] params) throws Exception {
+        Repository<T> repo = repository.get();
+        if (WebServer.notModified(exchange, repo.getVersion())) return;
+        WebServer.writeList(exchange, json, repo::stream);
+    }
+
+    private void create(HttpExchange exchange, String[] params) throws Exception {
+        T row = WebServer.readValue(exchange, json);
+        if (setId != null) {
+            String key = id.apply(row);
+            if (key == null || key.isEmpty()) {
+                setId.accept(row, UUID.randomUUID().toString());
+            }
+        }
+        WebServer.writeStatus(exchange, repository.get().insert(row), 201, "created");
+    }
+
+    private void get(HttpExchange exchange, String[] params) throws Exception {
+        Repository<T> repo = repository.get();
+        if (WebServer.notModified(exchange, repo.getVersion())) return;
+        T row = repo.findById(params[0]);
+        if (row != null) WebServer.writeValue(exchange, 200, json, row);
+        else exchange.sendResponseHeaders(404, -1);
+    }
+
+    private void update(HttpExchange exchange, String[] params) throws Exception {
+        T row = WebServer.readValue(exchange, json);
+        WebServer.writeStatus(exchange, repository.get().update(params[0], row), 200, "updated");
+    }
+
+    private void delete(HttpExchange exchange, String[] params) throws Exception {
+        WebServer.writeStatus(exchange, repository.get().delete(params[0]), 200, "deleted");
+    }
+}
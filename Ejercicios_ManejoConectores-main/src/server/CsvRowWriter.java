@@ -0,0 +1,60 @@
+package server;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+/**
+ * Writes entities as CSV records whose columns are the entity's JSON properties, so an export
+ * can be fed back to {@code /bulk} unchanged. Fields are quoted only when they need it.
+ */
+final class CsvRowWriter<T> {
+    private final ObjectMapper mapper;
+    private final Writer out;
+    private final String[] columns;
+
+    CsvRowWriter(ObjectMapper mapper, Class<T> type, Writer out) {
+        this.mapper = mapper;
+        this.out = out;
+        this.columns = mapper.getSerializationConfig().introspect(mapper.constructType(type)).findProperties()
+                .stream().map(BeanPropertyDefinition::getName).toArray(String[]::new);
+    }
+
+    void writeHeader() throws IOException {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) out.write(',');
+            writeField(columns[i]);
+        }
+        out.write('\n');
+    }
+
+    void write(T row) throws IOException {
+        JsonNode node = mapper.valueToTree(row);
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) out.write(',');
+            JsonNode value = node.get(columns[i]);
+            if (value != null && !value.isNull()) {
+                writeField(value.asText());
+            }
+        }
+        out.write('\n');
+    }
+
+    private void writeField(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
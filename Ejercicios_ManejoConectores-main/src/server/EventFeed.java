@@ -0,0 +1,219 @@
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * GET /api/events: Server-Sent Events with every rental, return and availability change
+ * the managers report, so the counters can stay current without polling the lists.
+ *
+ * Each event is framed once and kept in a ring of the last {@code sse.history} events. A
+ * client reconnecting with {@code Last-Event-ID} (or {@code ?lastEventId=}) is sent what it
+ * missed from the ring; when that is gone it gets a {@code reset} event and should reload
+ * its lists. Ids start from the clock, so after a restart an old id always asks for a reset.
+ *
+ * The handler thread only subscribes and returns. Each client has a bounded queue of
+ * {@code sse.clientBuffer} frames drained by a writer of its own (a virtual thread on Java
+ * 21+, a small-stack daemon thread otherwise), so a slow client never holds up publishing or
+ * the other clients. A client whose queue fills up is dropped; its writer exits once its
+ * pending socket write returns. A comment line every {@code sse.heartbeatSec} seconds keeps
+ * proxies from timing the stream out and finds clients that went away.
+ */
+final class EventFeed implements Router.Route, Closeable {
+    static final int DEFAULT_HISTORY = 1024;
+    static final int DEFAULT_CLIENT_BUFFER = 256;
+    static final int DEFAULT_HEARTBEAT_SEC = 15;
+
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RETRY = "retry: 3000\n\n".getBytes(StandardCharsets.US_ASCII);
+    // queued to wake a dropped client's writer, never written
+    private static final byte[] CLOSE = new byte[0];
+    private static final ExecutorService WRITERS = writers();
+
+    private final byte[][] history;
+    private final long[] historyIds;
+    private final int clientBuffer;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final LongAdder dropped = new LongAdder();
+    private final ScheduledExecutorService heartbeat;
+    private long lastId = System.currentTimeMillis() * 1000;
+
+    EventFeed(int history, int clientBuffer, int heartbeatSec) {
+        this.history = new byte[history][];
+        this.historyIds = new long[history];
+        this.clientBuffer = clientBuffer;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sse-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeat.scheduleAtFixedRate(() -> {
+            for (Subscriber s : subscribers) s.offer(HEARTBEAT);
+        }, heartbeatSec, heartbeatSec, TimeUnit.SECONDS);
+    }
+
+    /** The {@link biblioteca.ChangeListener} end: frames the event and queues it for every client. */
+    void publish(String type, Map<String, Object> data) {
+        String json;
+        try {
+            json = WebServer.MAPPER.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+            return;
+        }
+        synchronized (this) {
+            long id = ++lastId;
+            byte[] frame = frame(id, type, json);
+            int slot = (int) (id % history.length);
+            history[slot] = frame;
+            historyIds[slot] = id;
+            for (Subscriber s : subscribers) s.offer(frame);
+        }
+    }
+
+    @Override
+    public void handle(HttpExchange exchange, String[] params) throws IOException {
+        String header = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+        if (header == null) header = WebServer.queryParam(exchange.getRequestURI().getRawQuery(), "lastEventId");
+        long lastEventId = -1;
+        if (header != null) {
+            try {
+                lastEventId = Long.parseLong(header.trim());
+            } catch (NumberFormatException e) {
+                lastEventId = 0;
+            }
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream;charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        // nginx buffers responses unless told not to
+        exchange.getResponseHeaders().set("X-Accel-Buffering", "no");
+        exchange.sendResponseHeaders(200, 0);
+        subscribe(exchange.getResponseBody(), lastEventId);
+    }
+
+    /**
+     * Starts streaming to {@code out}, after what was missed since {@code lastEventId} (-1 for
+     * a new client). The writer closes {@code out} when the client is dropped or goes away.
+     */
+    Subscriber subscribe(OutputStream out, long lastEventId) {
+        Subscriber subscriber = new Subscriber(out);
+        synchronized (this) {
+            subscriber.queue.add(RETRY);
+            if (lastEventId >= 0 && lastEventId < lastId) {
+                long oldest = lastId - Math.min(history.length, clientBuffer) + 1;
+                if (lastEventId + 1 < oldest || historyIds[(int) ((lastEventId + 1) % history.length)] != lastEventId + 1) {
+                    subscriber.queue.add(frame(lastId, "reset", "{}"));
+                } else {
+                    for (long id = lastEventId + 1; id <= lastId; id++) {
+                        subscriber.queue.add(history[(int) (id % history.length)]);
+                    }
+                }
+            } else if (lastEventId > lastId) {
+                subscriber.queue.add(frame(lastId, "reset", "{}"));
+            }
+            subscribers.add(subscriber);
+        }
+        WRITERS.execute(subscriber);
+        return subscriber;
+    }
+
+    /** Stops the heartbeat and ends every stream; clients reconnect to whichever feed replaced this one. */
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+        for (Subscriber s : subscribers) s.close();
+    }
+
+    int getClients() {
+        return subscribers.size();
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    private static byte[] frame(long id, String type, String json) {
+        return ("id: " + id + "\nevent: " + type + "\ndata: " + json + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ExecutorService writers() {
+        ExecutorService virtual = ServerExecutor.newVirtualThreadExecutor();
+        if (virtual != null) return virtual;
+        return Executors.newCachedThreadPool(r -> {
+            // a writer only blocks in socket writes, it needs little stack
+            Thread t = new Thread(null, r, "sse-writer", 256 * 1024);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    final class Subscriber implements Runnable {
+        // the RETRY line, a full replay and a reset leave room for the buffer itself
+        final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(clientBuffer + 2);
+        private final OutputStream out;
+        private volatile boolean closed;
+
+        Subscriber(OutputStream out) {
+            this.out = out;
+        }
+
+        void offer(byte[] frame) {
+            if (closed) return;
+            if (!queue.offer(frame)) {
+                dropped.increment();
+                close();
+            }
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        private void close() {
+            closed = true;
+            subscribers.remove(this);
+            queue.clear();
+            queue.offer(CLOSE);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    byte[] frame = queue.take();
+                    // write what is queued, then flush once
+                    while (frame != null && frame != CLOSE && !closed) {
+                        out.write(frame);
+                        frame = queue.poll();
+                    }
+                    out.flush();
+                    if (frame == CLOSE) break;
+                }
+            } catch (IOException | InterruptedException e) {
+                // client went away
+            } finally {
+                close();
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // already gone
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * The representations of the API: JSON, and for machine clients CBOR and Smile, the binary
+ * formats of the same Jackson data model. They are smaller on the wire and faster to parse,
+ * and every entity maps to them with no extra code. Responses are chosen by {@code Accept},
+ * request bodies are read by {@code Content-Type}; anything else is JSON.
+ */
+enum Format {
+    JSON("application/json", "application/json;charset=utf-8", new ObjectMapper()),
+    CBOR("application/cbor", "application/cbor", new CBORMapper()),
+    SMILE("application/x-jackson-smile", "application/x-jackson-smile", new SmileMapper());
+
+    private static final Format[] FORMATS = values();
+
+    final String mediaType;
+    final String contentType;
+    final ObjectMapper mapper;
+
+    Format(String mediaType, String contentType, ObjectMapper mapper) {
+        this.mediaType = mediaType;
+        this.contentType = contentType;
+        this.mapper = mapper;
+    }
+
+    /**
+     * The format the client prefers: the highest {@code q} among the ones listed, the first
+     * listed on a tie, with wildcards standing for JSON. No header gets JSON, and so does a
+     * client asking only for types the API does not have, rather than a 406.
+     */
+    static Format negotiate(HttpExchange exchange) {
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if (accept == null) return JSON;
+        Format best = JSON;
+        double bestQ = 0;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String type = parts[0].trim();
+            // a wildcard is the default representation
+            Format format = type.equals("*/*") || type.equalsIgnoreCase("application/*") ? JSON : of(type);
+            if (format == null) continue;
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (q > bestQ) {
+                best = format;
+                bestQ = q;
+            }
+        }
+        return best;
+    }
+
+    /** The format of a request body. */
+    static Format ofRequest(HttpExchange exchange) {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType == null) return JSON;
+        int semicolon = contentType.indexOf(';');
+        Format format = of((semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim());
+        return format != null ? format : JSON;
+    }
+
+    private static Format of(String mediaType) {
+        for (Format format : FORMATS) {
+            if (format.mediaType.equalsIgnoreCase(mediaType)) return format;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,55 @@
+package server;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * The Jackson reader and writers of one entity type, built once for every {@link Format}.
+ * A reader or writer bound to its type finds its (de)serializer when it is created, instead
+ * of looking it up from the root, by the runtime class of the value, on every call.
+ *
+ * Writers produce bytes, or write into a generator over the response stream, with no
+ * {@code String} in between.
+ */
+final class JsonCodec<T> {
+    private static final ConcurrentHashMap<Class<?>, JsonCodec<?>> CODECS = new ConcurrentHashMap<>();
+
+    private final ObjectReader[] readers;
+    private final ObjectWriter[] writers;
+    private final ObjectWriter[] rows;
+
+    private JsonCodec(Class<T> type) {
+        Format[] formats = Format.values();
+        readers = new ObjectReader[formats.length];
+        writers = new ObjectWriter[formats.length];
+        rows = new ObjectWriter[formats.length];
+        for (Format format : formats) {
+            readers[format.ordinal()] = format.mapper.readerFor(type);
+            writers[format.ordinal()] = format.mapper.writerFor(type);
+            rows[format.ordinal()] = writers[format.ordinal()].without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> JsonCodec<T> of(Class<T> type) {
+        return (JsonCodec<T>) CODECS.computeIfAbsent(type, JsonCodec::new);
+    }
+
+    /** Reads one request body. */
+    ObjectReader reader(Format format) {
+        return readers[format.ordinal()];
+    }
+
+    /** Writes one response body. */
+    ObjectWriter writer(Format format) {
+        return writers[format.ordinal()];
+    }
+
+    /** Writes rows one after another into a shared generator, leaving the flushing to it. */
+    ObjectWriter rows(Format format) {
+        return rows[format.ordinal()];
+    }
+}
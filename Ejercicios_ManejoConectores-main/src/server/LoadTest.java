@@ -0,0 +1,417 @@
+package server;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.sun.net.httpserver.HttpServer;
+
+import biblioteca.Alquiler;
+import biblioteca.Empleado;
+import biblioteca.Libro;
+import biblioteca.Socio;
+
+/**
+ * End-to-end load generator for the API. Without {@code --url} it starts the server in
+ * in-memory mode on a free port, in this JVM, and drives it; with {@code --url} it targets a
+ * server that is already running (better numbers, client and server do not share the CPU).
+ *
+ * Requests are sent open loop at a constant arrival rate: request {@code i} is due at
+ * {@code start + i / rate} whatever happened to the previous ones, and its latency is taken
+ * from that due time, so a stalled server shows up in the percentiles instead of silently
+ * lowering the offered load. Requests that would exceed {@code --maxInFlight} are not sent and
+ * are counted as dropped.
+ *
+ * GETs are spread over the list, filtered and by-id endpoints of every context. POST/PUT/DELETE
+ * work on rows the test creates itself (libros, socios, empleados, and rentals of the libros
+ * it created), so the seed data is left alone.
+ *
+ * <pre>
+ * mvn -q compile exec:java -Dexec.mainClass=server.LoadTest \
+ *     -Dexec.args="--rate=2000 --duration=30 --warmup=5 --mix=get:80,post:8,put:7,delete:5"
+ * </pre>
+ */
+public class LoadTest {
+    private static final long HIGHEST_LATENCY_US = TimeUnit.MINUTES.toMicros(2);
+
+    static final class Options {
+        String url;
+        int rate = 500;
+        int durationSec = 30;
+        int warmupSec = 5;
+        int maxInFlight = 1000;
+        int timeoutSec = 10;
+        int get = 80;
+        int post = 8;
+        int put = 7;
+        int delete = 5;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (!arg.startsWith("--") || eq < 0) {
+                    throw new IllegalArgumentException("expected --name=value, got " + arg);
+                }
+                String name = arg.substring(2, eq);
+                String value = arg.substring(eq + 1);
+                switch (name) {
+                    case "url": o.url = value; break;
+                    case "rate": o.rate = Integer.parseInt(value); break;
+                    case "duration": o.durationSec = Integer.parseInt(value); break;
+                    case "warmup": o.warmupSec = Integer.parseInt(value); break;
+                    case "maxInFlight": o.maxInFlight = Integer.parseInt(value); break;
+                    case "timeout": o.timeoutSec = Integer.parseInt(value); break;
+                    case "mix": o.mix(value); break;
+                    default: throw new IllegalArgumentException("unknown option --" + name);
+                }
+            }
+            if (o.rate < 1 || o.durationSec < 1 || o.warmupSec < 0 || o.maxInFlight < 1) {
+                throw new IllegalArgumentException("rate, duration and maxInFlight must be positive");
+            }
+            return o;
+        }
+
+        /** {@code get:80,post:8,put:7,delete:5}; methods left out get weight 0. */
+        private void mix(String value) {
+            get = post = put = delete = 0;
+            for (String part : value.split(",")) {
+                String[] kv = part.split(":");
+                int weight = Integer.parseInt(kv[1].trim());
+                switch (kv[0].trim().toLowerCase()) {
+                    case "get": get = weight; break;
+                    case "post": post = weight; break;
+                    case "put": put = weight; break;
+                    case "delete": delete = weight; break;
+                    default: throw new IllegalArgumentException("unknown method in mix: " + kv[0]);
+                }
+            }
+            if (get + post + put + delete <= 0) {
+                throw new IllegalArgumentException("the mix needs at least one positive weight");
+            }
+        }
+    }
+
+    /** A request ready to send, with the name its latency is recorded under. */
+    private static final class Call {
+        final String name;
+        final HttpRequest request;
+        final Runnable onSuccess;
+        final Runnable onFailure;
+
+        Call(String name, HttpRequest request, Runnable onSuccess, Runnable onFailure) {
+            this.name = name;
+            this.request = request;
+            this.onSuccess = onSuccess;
+            this.onFailure = onFailure;
+        }
+    }
+
+    /** A collection the test writes to, with the ids of the rows it created that are still there. */
+    private final class Resource {
+        final String path;
+        final String prefix;
+        final Function<String, Object> row;
+        final ConcurrentLinkedQueue<String> live = new ConcurrentLinkedQueue<>();
+        // rentals already returned: they can be deleted but not returned again
+        final ConcurrentLinkedQueue<String> returned = new ConcurrentLinkedQueue<>();
+
+        Resource(String path, String prefix, Function<String, Object> row) {
+            this.path = path;
+            this.prefix = prefix;
+            this.row = row;
+        }
+
+        Call post() {
+            String id = prefix + ids.incrementAndGet();
+            Object value = row.apply(id);
+            if (value == null) return null;
+            return new Call("POST " + path, json(path, "POST", value), () -> live.add(id), () -> { });
+        }
+
+        Call put() {
+            String id = live.poll();
+            if (id == null) return null;
+            if (this == alquileres) {
+                return new Call("PUT " + path + "/{id}", json(path + "/" + id, "PUT", Map.of("accion", "devolver")),
+                        () -> returned.add(id), () -> live.add(id));
+            }
+            return new Call("PUT " + path + "/{id}", json(path + "/" + id, "PUT", row.apply(id)), () -> live.add(id), () -> live.add(id));
+        }
+
+        Call delete() {
+            String id = returned.poll();
+            if (id == null) id = live.poll();
+            if (id == null) return null;
+            return new Call("DELETE " + path + "/{id}", request(path + "/" + id).DELETE().build(), () -> { }, () -> { });
+        }
+    }
+
+    private final Options options;
+    private final String base;
+    private final HttpClient client;
+    private final ExecutorService callbacks;
+    private final AtomicLong ids = new AtomicLong();
+    private final List<String> gets = new ArrayList<>();
+    private final Resource libros;
+    private final Resource socios;
+    private final Resource empleados;
+    private final Resource alquileres;
+    private final Resource[] resources;
+
+    private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+    private final Histogram total = new ConcurrentHistogram(HIGHEST_LATENCY_US, 3);
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean recording;
+
+    LoadTest(Options options, String base) {
+        this.options = options;
+        this.base = base;
+        this.callbacks = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread t = new Thread(r, "loadtest-client");
+            t.setDaemon(true);
+            return t;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(options.timeoutSec))
+                .executor(callbacks)
+                .build();
+
+        for (String path : new String[] { "/api/libros", "/api/libros/disponibles", "/api/libros/alquilados",
+                "/api/libros/L001", "/api/libros/L004", "/api/libros/disponibles?limit=20",
+                "/api/alquileres", "/api/alquileres/activos", "/api/alquileres/historial", "/api/alquileres/A001",
+                "/api/socios", "/api/socios/S001", "/api/socios/S001/alquileres",
+                "/api/empleados", "/api/empleados/E001", "/api/students" }) {
+            gets.add(path);
+        }
+        libros = new Resource("/api/libros", "LT", id -> new Libro(id, "Libro " + id, "Autor", "978-0000000000", true));
+        socios = new Resource("/api/socios", "ST", id -> new Socio(id, "Nombre", "Apellido", id + "@example.com", "600000000", "2025-01-01"));
+        empleados = new Resource("/api/empleados", "ET", id -> new Empleado(id, "Nombre", "Apellido", id + "@example.com", "Asistente", "1200", "2025-01-01"));
+        // a rental takes one of the libros this test created off the libro pool for good
+        alquileres = new Resource("/api/alquileres", "AT", id -> {
+            String libro = libros.live.poll();
+            return libro == null ? null : new Alquiler(id, "S001", libro, "2025-03-01", null, "activo");
+        });
+        resources = new Resource[] { libros, socios, empleados, alquileres };
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: LoadTest [--url=http://host:port] [--rate=500] [--duration=30] [--warmup=5]"
+                    + " [--mix=get:80,post:8,put:7,delete:5] [--maxInFlight=1000] [--timeout=10]");
+            System.exit(2);
+            return;
+        }
+        run(options).print(System.out);
+        System.exit(0);
+    }
+
+    /** Runs the test, starting an in-memory server first when no {@code --url} was given. */
+    static LoadTest run(Options options) throws Exception {
+        HttpServer http = null;
+        ServerExecutor executor = null;
+        String base = options.url;
+        if (base == null) {
+            Properties p = new Properties();
+            try (InputStream in = Files.newInputStream(Paths.get("config/server.properties"))) {
+                p.load(in);
+            } catch (Exception e) {
+                // executor defaults are fine for a local run
+            }
+            WebServer.connectManagers(null);
+            executor = ServerExecutor.fromProperties(p);
+            http = WebServer.createServer(0, executor);
+            http.start();
+            base = "http://localhost:" + http.getAddress().getPort();
+        }
+        LoadTest test = new LoadTest(options, base);
+        try {
+            test.drive();
+        } finally {
+            test.callbacks.shutdownNow();
+            if (http != null) http.stop(0);
+            if (executor != null) executor.shutdown();
+        }
+        return test;
+    }
+
+    private void drive() throws InterruptedException {
+        Semaphore inFlight = new Semaphore(options.maxInFlight);
+        long period = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        long start = System.nanoTime();
+        long warmupEnd = start + TimeUnit.SECONDS.toNanos(options.warmupSec);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(options.durationSec);
+        recording = options.warmupSec == 0;
+
+        for (long i = 0; ; i++) {
+            long due = start + i * period;
+            if (due >= end) break;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            if (!recording && due >= warmupEnd) {
+                recording = true;
+            }
+            boolean measured = recording;
+            if (!inFlight.tryAcquire()) {
+                if (measured) dropped.increment();
+                continue;
+            }
+            Call call = next();
+            if (measured) sent.increment();
+            client.sendAsync(call.request, HttpResponse.BodyHandlers.discarding()).whenComplete((res, error) -> {
+                long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due);
+                try {
+                    boolean ok = error == null && res.statusCode() < 400;
+                    (ok ? call.onSuccess : call.onFailure).run();
+                    if (!measured) return;
+                    record(call.name, micros);
+                    if (error != null) {
+                        error(cause(error));
+                    } else if (!ok) {
+                        error("HTTP " + res.statusCode());
+                    }
+                } finally {
+                    // released last, so drive() only returns once every result is counted
+                    inFlight.release();
+                }
+            });
+        }
+        // let the last requests finish before reporting
+        inFlight.tryAcquire(options.maxInFlight, options.timeoutSec + 1, TimeUnit.SECONDS);
+    }
+
+    /** Picks the next request according to the method mix. */
+    private Call next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int pick = random.nextInt(options.get + options.post + options.put + options.delete);
+        Call call = null;
+        if (pick >= options.get) {
+            Resource resource = resources[random.nextInt(resources.length)];
+            pick -= options.get;
+            if (pick < options.post) {
+                call = resource.post();
+            } else if (pick < options.post + options.put) {
+                call = resource.put();
+            } else {
+                call = resource.delete();
+            }
+            // nothing of ours to update or delete yet: create a libro instead
+            if (call == null) call = libros.post();
+        }
+        if (call == null) {
+            String path = gets.get(random.nextInt(gets.size()));
+            call = new Call("GET " + path, request(path).GET().build(), () -> { }, () -> { });
+        }
+        return call;
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path)).timeout(Duration.ofSeconds(options.timeoutSec));
+    }
+
+    private HttpRequest json(String path, String method, Object body) {
+        try {
+            return request(path)
+                    .header("Content-Type", "application/json")
+                    .method(method, HttpRequest.BodyPublishers.ofString(WebServer.MAPPER.writeValueAsString(body)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void record(String name, long micros) {
+        long value = Math.min(micros, HIGHEST_LATENCY_US);
+        latencies.computeIfAbsent(name, k -> new ConcurrentHistogram(HIGHEST_LATENCY_US, 3)).recordValue(value);
+        total.recordValue(value);
+    }
+
+    private void error(String kind) {
+        errors.computeIfAbsent(kind, k -> new LongAdder()).increment();
+    }
+
+    private static String cause(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof HttpTimeoutException ? "timeout" : cause.getClass().getSimpleName();
+    }
+
+    long getSent() {
+        return sent.sum();
+    }
+
+    long getCompleted() {
+        return total.getTotalCount();
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    long getErrors() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    Histogram getLatency(String name) {
+        return latencies.get(name);
+    }
+
+    void print(PrintStream out) {
+        out.printf("Load test against %s: %d req/s offered for %d s (after %d s warm-up), mix get:%d post:%d put:%d delete:%d%n",
+                base, options.rate, options.durationSec, options.warmupSec, options.get, options.post, options.put, options.delete);
+        out.printf("Sent %d, completed %d, dropped %d (in flight > %d), throughput %.1f req/s%n",
+                getSent(), getCompleted(), getDropped(), options.maxInFlight, getCompleted() / (double) options.durationSec);
+        if (errors.isEmpty()) {
+            out.println("Errors: none");
+        } else {
+            StringBuilder line = new StringBuilder("Errors:");
+            new TreeMap<>(errors).forEach((kind, count) -> line.append(' ').append(kind).append('=').append(count.sum()));
+            out.println(line);
+        }
+        out.println();
+        out.printf("%-40s %8s %9s %9s %9s %9s %9s%n", "latency (ms)", "count", "p50", "p90", "p99", "p99.9", "max");
+        new TreeMap<>(latencies).forEach((name, h) -> row(out, name, h));
+        row(out, "all", total);
+    }
+
+    private static void row(PrintStream out, String name, Histogram h) {
+        out.printf("%-40s %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, h.getTotalCount(),
+                h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0, h.getMaxValue() / 1000.0);
+    }
+}
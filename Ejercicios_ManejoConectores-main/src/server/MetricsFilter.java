@@ -0,0 +1,117 @@
+package server;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+import metrics.RouteMetrics;
+
+/**
+ * First filter of every context: times the exchange and counts its body bytes into the
+ * context's {@link RouteMetrics}, or those of the route the {@link Router} matched. Runs
+ * before the overload filter so 503s are counted too. Recording allocates nothing; the two
+ * stream wrappers are the only per-request objects.
+ */
+final class MetricsFilter extends Filter {
+    // set by the Router on the thread running the exchange, to record under the matched route
+    private static final ThreadLocal<RouteMetrics> MATCHED = new ThreadLocal<>();
+
+    private final RouteMetrics route;
+
+    MetricsFilter(RouteMetrics route) {
+        this.route = route;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        Headers headers = exchange.getRequestHeaders();
+        if (!headers.containsKey("Transfer-encoding") && isZero(headers.getFirst("Content-length"))) {
+            // Reading the empty body marks it consumed. Otherwise the server closes the
+            // connection after a bodyless reply such as sendResponseHeaders(404, -1), and a
+            // client reusing it can fail its next request.
+            exchange.getRequestBody().read();
+        }
+        CountingInputStream in = new CountingInputStream(exchange.getRequestBody());
+        CountingOutputStream out = new CountingOutputStream(exchange.getResponseBody());
+        exchange.setStreams(in, out);
+        MATCHED.set(null);
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            RouteMetrics matched = MATCHED.get();
+            // -1 means the handler failed before sending headers; it is recorded as a 500
+            (matched != null ? matched : route).record(exchange.getResponseCode(), System.nanoTime() - start, in.count, out.count);
+            MATCHED.set(null);
+        }
+    }
+
+    /** Records the exchange running on this thread under {@code matched} instead of the context. */
+    static void recordAs(RouteMetrics matched) {
+        MATCHED.set(matched);
+    }
+
+    private static boolean isZero(String contentLength) {
+        return contentLength == null || contentLength.trim().equals("0");
+    }
+
+    @Override
+    public String description() {
+        return "Records per-route request counts, latency and body bytes";
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
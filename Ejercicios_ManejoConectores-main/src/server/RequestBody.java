@@ -0,0 +1,107 @@
+package server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Request bodies of the API routes, read straight from the exchange's stream and never more
+ * than {@code server.maxBodyBytes} of them. A body declaring a larger Content-Length fails
+ * before a byte is read, a chunked one as soon as it goes past the limit; the {@link Router}
+ * answers both with 413. Bulk imports are not bounded here: they stream row by row.
+ */
+final class RequestBody {
+    static final int DEFAULT_MAX_BYTES = 1 << 20;
+
+    private static volatile long maxBytes = DEFAULT_MAX_BYTES;
+
+    private RequestBody() {
+    }
+
+    /** Sets the largest body accepted; 0 or less lifts the limit. */
+    static void configure(long max) {
+        maxBytes = max > 0 ? max : Long.MAX_VALUE;
+    }
+
+    /** The body of {@code exchange}, failing with {@link TooLarge} past the limit. */
+    static InputStream open(HttpExchange exchange) throws IOException {
+        long max = maxBytes;
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength.trim()) > max) throw new TooLarge(max);
+            } catch (NumberFormatException e) {
+                // the server rejects a malformed length before the handler runs
+            }
+        }
+        return new Bounded(exchange.getRequestBody(), max);
+    }
+
+    /**
+     * The string value of one top-level field of a command body such as
+     * {@code {"accion":"devolver"}}, or null when it is missing or not a string. The parser
+     * stops at the field: no tree is built, and whatever follows it is not read.
+     */
+    static String field(HttpExchange exchange, String name) throws IOException {
+        Format format = Format.ofRequest(exchange);
+        try (JsonParser parser = format.mapper.getFactory().createParser(open(exchange))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                boolean wanted = name.equals(parser.getCurrentName());
+                JsonToken value = parser.nextToken();
+                if (wanted) return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+
+    /** A body longer than the configured maximum. */
+    static final class TooLarge extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        TooLarge(long max) {
+            super("request body larger than " + max + " bytes");
+        }
+    }
+
+    private static final class Bounded extends FilterInputStream {
+        private final long max;
+        private long count;
+
+        Bounded(InputStream in, long max) {
+            super(in);
+            this.max = max;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) throws TooLarge {
+            count += n;
+            if (count > max) throw new TooLarge(max);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import metrics.Metrics;
+import metrics.RouteMetrics;
+
+/**
+ * Dispatches every API request from a single context. Routes are a method plus a path
+ * template such as {@code /api/libros/{id}/alquileres}; they are compiled into a trie of path
+ * segments when registered, so a request is matched by walking its path one segment at a
+ * time, with no regex or split. Literal segments win over {@code {param}} ones, which match
+ * any single segment and are handed to the route in template order.
+ *
+ * Unknown paths get 404 and known paths with another method 405 plus an Allow header. A route
+ * that throws gets the usual 500 {@code {"error":"server error"}}, or has its connection
+ * dropped if the response had already started, so the client sees the body cut short. Each
+ * route records its own metrics, labelled with its method and template.
+ */
+final class Router implements HttpHandler {
+
+    @FunctionalInterface
+    interface Route {
+        void handle(HttpExchange exchange, String[] params) throws Exception;
+    }
+
+    private static final String[] NO_PARAMS = new String[0];
+
+    private final Node root = new Node();
+
+    /** Adds a route, replacing any previous one for the same method and template. */
+    Router add(String method, String template, Route route) {
+        Node node = root;
+        int params = 0;
+        for (String segment : segments(template)) {
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                if (node.param == null) node.param = new Node();
+                node = node.param;
+                params++;
+            } else {
+                node = node.children.computeIfAbsent(segment, k -> new Node());
+            }
+        }
+        String key = method.toUpperCase();
+        node.endpoints.put(key, new Endpoint(route, params, Metrics.route(key + " " + template)));
+        node.allow = String.join(", ", node.endpoints.keySet());
+        return this;
+    }
+
+    Router get(String template, Route route) {
+        return add("GET", template, route);
+    }
+
+    Router post(String template, Route route) {
+        return add("POST", template, route);
+    }
+
+    Router put(String template, Route route) {
+        return add("PUT", template, route);
+    }
+
+    Router delete(String template, Route route) {
+        return add("DELETE", template, route);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        Match match = match(exchange.getRequestMethod(), exchange.getRequestURI().getPath());
+        if (match.endpoint == null) {
+            if (match.allow != null) exchange.getResponseHeaders().set("Allow", match.allow);
+            exchange.sendResponseHeaders(match.allow != null ? 405 : 404, -1);
+            return;
+        }
+        MetricsFilter.recordAs(match.endpoint.metrics);
+        try {
+            match.endpoint.route.handle(exchange, match.params);
+        } catch (RequestBody.TooLarge e) {
+            if (exchange.getResponseCode() == -1) {
+                WebServer.writeJson(exchange, 413, "{\"error\":\"request body too large\"}");
+            } else {
+                exchange.close();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (exchange.getResponseCode() == -1) {
+                WebServer.writeJson(exchange, 500, "{\"error\":\"server error\"}");
+            } else {
+                // Part of the body is out. Closing the exchange would end it as if it were
+                // complete; failing the exchange makes the server drop the connection instead.
+                throw e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * Finds the route for a request. When nothing matches, {@code endpoint} is null and
+     * {@code allow} lists the methods the path does support, if any.
+     */
+    Match match(String method, String path) {
+        Match match = new Match();
+        Node node = find(root, path, skipSlashes(path, 0), match, 0);
+        if (node == null) return match;
+        Endpoint endpoint = node.endpoints.get(method);
+        if (endpoint == null) endpoint = node.endpoints.get(method.toUpperCase());
+        if (endpoint == null) {
+            match.allow = node.allow;
+            match.params = NO_PARAMS;
+            return match;
+        }
+        match.endpoint = endpoint;
+        if (match.params == null || endpoint.params == 0) {
+            match.params = NO_PARAMS;
+        }
+        return match;
+    }
+
+    /**
+     * Walks the segment starting at {@code start}; captured values go to {@code match.params}
+     * at {@code depth}. Tries the literal child first and backtracks to the parameter child.
+     */
+    private static Node find(Node node, String path, int start, Match match, int depth) {
+        if (start >= path.length()) {
+            return node.endpoints.isEmpty() ? null : node;
+        }
+        int end = path.indexOf('/', start);
+        if (end < 0) end = path.length();
+        String segment = path.substring(start, end);
+        int next = skipSlashes(path, end);
+
+        Node literal = node.children.get(segment);
+        if (literal != null) {
+            Node found = find(literal, path, next, match, depth);
+            if (found != null) return found;
+        }
+        if (node.param != null) {
+            Node found = find(node.param, path, next, match, depth + 1);
+            if (found != null) {
+                if (match.params == null) match.params = new String[depth + 1];
+                match.params[depth] = segment;
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private static int skipSlashes(String path, int i) {
+        while (i < path.length() && path.charAt(i) == '/') i++;
+        return i;
+    }
+
+    private static List<String> segments(String template) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : template.split("/")) {
+            if (!segment.isEmpty()) segments.add(segment);
+        }
+        return segments;
+    }
+
+    static final class Match {
+        Endpoint endpoint;
+        String[] params;
+        String allow;
+    }
+
+    static final class Endpoint {
+        final Route route;
+        final int params;
+        final RouteMetrics metrics;
+
+        Endpoint(Route route, int params, RouteMetrics metrics) {
+            this.route = route;
+            this.params = params;
+            this.metrics = metrics;
+        }
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        Node param;
+        final Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+        String allow;
+    }
+}
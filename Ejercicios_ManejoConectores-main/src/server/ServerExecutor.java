@@ -0,0 +1,186 @@
+package server;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Executor used by {@link WebServer} to run the handlers.
+ *
+ * Modes ({@code server.executor} in {@code config/server.properties}):
+ * <ul>
+ * <li>{@code pool}: bounded platform thread pool with a bounded queue. When both are
+ * full the exchange goes to a small reserve of threads that run it only as far as
+ * {@link #overloadFilter()}, which answers 503 without calling the handler. Running it on
+ * the dispatcher instead would stall every accept and read behind one slow client, since
+ * the exchange still has to read the request headers; only if the reserve is full too
+ * does the dispatcher answer the 503 itself.</li>
+ * <li>{@code virtual}: one virtual thread per request (Java 21+). Falls back to
+ * {@code pool} on older runtimes.</li>
+ * <li>{@code single}: the JDK default, every handler on the dispatcher thread.</li>
+ * </ul>
+ */
+public class ServerExecutor {
+    private static final ThreadLocal<Boolean> REJECTED = new ThreadLocal<>();
+    /** Threads, and queued exchanges behind them, that answer the 503s of a saturated pool. */
+    static final int REJECT_THREADS = 2;
+    static final int REJECT_QUEUE = 64;
+
+    private final String mode;
+    private final ExecutorService executor;
+    private final ExecutorService reserve;
+    private final int queueCapacity;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private ServerExecutor(String mode, ExecutorService executor, int queueCapacity) {
+        this(mode, executor, null, queueCapacity);
+    }
+
+    private ServerExecutor(String mode, ExecutorService executor, ExecutorService reserve, int queueCapacity) {
+        this.mode = mode;
+        this.executor = executor;
+        this.reserve = reserve;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public static ServerExecutor fromProperties(Properties p) {
+        String mode = p.getProperty("server.executor", "pool").trim().toLowerCase();
+        int threads = Integer.parseInt(p.getProperty("server.threads", "16"));
+        int queue = Integer.parseInt(p.getProperty("server.queue", "256"));
+
+        if (mode.equals("single")) {
+            return new ServerExecutor(mode, null, 0);
+        }
+        if (mode.equals("virtual")) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                return new ServerExecutor(mode, virtual, 0);
+            }
+            System.out.println("⚠️ Virtual threads need Java 21+, using a platform thread pool");
+        }
+        return newPool(threads, queue);
+    }
+
+    public static ServerExecutor newPool(int threads, int queue) {
+        AtomicInteger n = new AtomicInteger();
+        AtomicInteger m = new AtomicInteger();
+        // the last resort: the dispatcher thread answers the 503 itself (r is already marked)
+        RejectedExecutionHandler onDispatcher = (r, pool) -> r.run();
+        ThreadPoolExecutor reserve = new ThreadPoolExecutor(REJECT_THREADS, REJECT_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(REJECT_QUEUE), r -> {
+                    Thread t = new Thread(r, "http-reject-" + m.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, onDispatcher);
+        reserve.allowCoreThreadTimeOut(true);
+        // overloadFilter() short-circuits a rejected exchange with a 503
+        RejectedExecutionHandler onReject = (r, pool) -> reserve.execute(rejected(r));
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queue), r -> {
+                    Thread t = new Thread(r, "http-worker-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, onReject);
+        return new ServerExecutor("pool", pool, reserve, queue);
+    }
+
+    /** Runs {@code exchange} marked as rejected, on whichever thread runs the result. */
+    private static Runnable rejected(Runnable exchange) {
+        return () -> {
+            REJECTED.set(Boolean.TRUE);
+            try {
+                exchange.run();
+            } finally {
+                REJECTED.remove();
+            }
+        };
+    }
+
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /** The executor to hand to {@code HttpServer.setExecutor}, or null for the dispatcher thread. */
+    public ExecutorService executor() {
+        return executor;
+    }
+
+    /** Rejects the overflow with 503 and keeps the active/completed counters. */
+    public Filter overloadFilter() {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                if (REJECTED.get() != null) {
+                    rejected.incrementAndGet();
+                    exchange.getRequestBody().close();
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                    exchange.sendResponseHeaders(503, -1);
+                    exchange.close();
+                    return;
+                }
+                active.incrementAndGet();
+                try {
+                    chain.doFilter(exchange);
+                } finally {
+                    active.decrementAndGet();
+                    completed.incrementAndGet();
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Rejects requests with 503 when the executor is saturated";
+            }
+        };
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getQueuedCount() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        return 0;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public void shutdown() {
+        if (executor != null) executor.shutdown();
+        if (reserve != null) reserve.shutdown();
+    }
+}
@@ -0,0 +1,264 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Serves the files under {@code web/} from memory. Every file is read once, when the server
+ * starts, together with its strong ETag and a gzip copy; a {@code name.br} file next to it,
+ * if there is one, is served as the brotli variant. Requests never touch the disk.
+ *
+ * Responses carry {@code Cache-Control} and {@code Vary: Accept-Encoding}; a request whose
+ * {@code If-None-Match} names the variant it would get is answered 304 with no body. HTML
+ * is {@code no-cache} (always revalidated) so a deploy shows up on the next load; the rest
+ * may be reused for {@code static.maxAgeSec} seconds. With {@link #watch()} a daemon thread
+ * reloads files as they change on disk, for editing the front end with the server running.
+ *
+ * A request path is normalized and must stay inside the web root, so {@code ..} cannot
+ * reach any other file; since only loaded files are ever served it could not anyway.
+ */
+class StaticAssets implements HttpHandler, Closeable {
+    static final int DEFAULT_MAX_AGE_SEC = 3600;
+
+    private final Path root;
+    private final int maxAgeSec;
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+    private volatile WatchService watcher;
+
+    StaticAssets(Path root, int maxAgeSec) {
+        this.root = root.toAbsolutePath().normalize();
+        this.maxAgeSec = maxAgeSec;
+        if (!Files.isDirectory(this.root)) {
+            System.out.println("⚠️ No static files: " + this.root + " is not a directory");
+            return;
+        }
+        try (Stream<Path> files = Files.walk(this.root)) {
+            files.filter(Files::isRegularFile).forEach(this::load);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        boolean head = method.equalsIgnoreCase("HEAD");
+        if (!head && !method.equalsIgnoreCase("GET")) {
+            exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+        String key = key(exchange.getRequestURI().getPath());
+        Asset asset = key == null ? null : assets.get(key);
+        if (asset == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        Variant variant = asset.identity;
+        if (asset.brotli != null && WebServer.acceptsEncoding(exchange, "br")) variant = asset.brotli;
+        else if (asset.gzip != null && WebServer.acceptsGzip(exchange)) variant = asset.gzip;
+
+        exchange.getResponseHeaders().set("ETag", variant.etag);
+        exchange.getResponseHeaders().set("Cache-Control", asset.cacheControl);
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), variant.etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", asset.contentType);
+        if (variant.encoding != null) exchange.getResponseHeaders().set("Content-Encoding", variant.encoding);
+        if (head) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(variant.bytes.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, variant.bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(variant.bytes);
+        }
+    }
+
+    /**
+     * Starts reloading files when they are created, changed or deleted under the web root.
+     * Subdirectories that exist now are watched; new ones are not.
+     */
+    synchronized void watch() throws IOException {
+        if (watcher != null || !Files.isDirectory(root)) return;
+        watcher = FileSystems.getDefault().newWatchService();
+        try (Stream<Path> dirs = Files.walk(root)) {
+            for (Path dir : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+        Thread t = new Thread(this::watchLoop, "static-watch");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher != null) watcher.close();
+    }
+
+    int size() {
+        return assets.size();
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+                    Path file = dir.resolve((Path) event.context());
+                    if (Files.isRegularFile(file)) {
+                        load(file);
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        unload(file);
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // server stopping
+        }
+    }
+
+    /** Reads one file into the table; a {@code .br} file refreshes the asset it belongs to. */
+    private void load(Path file) {
+        String name = root.relativize(file).toString().replace('\\', '/');
+        if (name.endsWith(".br")) {
+            Path original = file.resolveSibling(file.getFileName().toString().replaceFirst("\\.br$", ""));
+            if (Files.isRegularFile(original)) load(original);
+            return;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            Path br = file.resolveSibling(file.getFileName() + ".br");
+            byte[] brotli = Files.isRegularFile(br) ? Files.readAllBytes(br) : null;
+            assets.put(name, new Asset(name, bytes, brotli, maxAgeSec));
+        } catch (IOException e) {
+            // deleted or still being written: the next event picks it up
+            assets.remove(name);
+        }
+    }
+
+    private void unload(Path file) {
+        String name = root.relativize(file).toString().replace('\\', '/');
+        if (name.endsWith(".br")) {
+            load(file);
+        } else {
+            assets.remove(name);
+        }
+    }
+
+    /**
+     * The table key for a decoded request path, or null when it is not a file inside the
+     * web root. "/" is index.html.
+     */
+    String key(String path) {
+        if (path == null || path.isEmpty() || path.equals("/")) return "index.html";
+        if (path.indexOf('\0') >= 0 || path.indexOf('\\') >= 0) return null;
+        Path resolved = root.resolve(path.substring(1)).normalize();
+        if (!resolved.startsWith(root) || resolved.equals(root)) return null;
+        return root.relativize(resolved).toString().replace('\\', '/');
+    }
+
+    /** If-None-Match against one tag, with the weak comparison RFC 9110 asks for. */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        if (etag.startsWith("W/")) etag = etag.substring(2);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*")) return true;
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    static String contentType(String name) {
+        if (name.endsWith(".html")) return "text/html;charset=utf-8";
+        if (name.endsWith(".js") || name.endsWith(".jsx")) return "application/javascript;charset=utf-8";
+        if (name.endsWith(".css")) return "text/css;charset=utf-8";
+        if (name.endsWith(".json")) return "application/json;charset=utf-8";
+        if (name.endsWith(".svg")) return "image/svg+xml";
+        if (name.endsWith(".png")) return "image/png";
+        if (name.endsWith(".ico")) return "image/x-icon";
+        return "application/octet-stream";
+    }
+
+    private static final class Asset {
+        final String contentType;
+        final String cacheControl;
+        final Variant identity;
+        final Variant gzip;
+        final Variant brotli;
+
+        Asset(String name, byte[] bytes, byte[] brotli, int maxAgeSec) throws IOException {
+            this.contentType = contentType(name);
+            this.cacheControl = name.endsWith(".html") ? "no-cache" : "public, max-age=" + maxAgeSec;
+            String tag = hash(bytes);
+            this.identity = new Variant(bytes, null, "\"" + tag + "\"");
+            byte[] gzipped = gzip(bytes);
+            // images and tiny files do not get smaller
+            this.gzip = gzipped.length < bytes.length ? new Variant(gzipped, "gzip", "\"" + tag + "-gz\"") : null;
+            this.brotli = brotli != null ? new Variant(brotli, "br", "\"" + tag + "-br\"") : null;
+        }
+    }
+
+    private static final class Variant {
+        final byte[] bytes;
+        final String encoding;
+        final String etag;
+
+        Variant(byte[] bytes, String encoding, String etag) {
+            this.bytes = bytes;
+            this.encoding = encoding;
+            this.etag = etag;
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 3 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xf, 16)).append(Character.forDigit(digest[i] & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
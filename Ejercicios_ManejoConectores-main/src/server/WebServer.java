@@ -1,33 +1,48 @@
 package server;
 
-import java.io.File;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.InetSocketAddress;
-import java.net.URI;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
-import java.util.UUID;
+import java.util.function.Function;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
+import Conexion.ConnectionPool;
+
 import biblioteca.Alquiler;
+import biblioteca.BulkInsert;
+import biblioteca.BulkResult;
 import biblioteca.Empleado;
+import biblioteca.EntityCache;
 import biblioteca.Libro;
 import biblioteca.ManageAlquileres;
 import biblioteca.ManageEmpleados;
 import biblioteca.ManageLibros;
 import biblioteca.ManageSocios;
+import biblioteca.PageRequest;
+import biblioteca.RowConsumer;
+import biblioteca.RowSource;
 import biblioteca.Socio;
 import ejercicio307.ManageStudents;
 import ejercicio307.Student;
+import metrics.Metrics;
 
 
 /**
@@ -38,242 +53,305 @@ public class WebServer {
     private static ManageStudents manager = new ManageStudents();
     private static ManageSocios manageSocios = new ManageSocios();
     private static ManageLibros manageLibros = new ManageLibros();
-    private static ManageAlquileres manageAlquileres = new ManageAlquileres();
+    private static ManageAlquileres manageAlquileres = new ManageAlquileres(manageLibros);
     private static ManageEmpleados manageEmpleados = new ManageEmpleados();
-    private static final ObjectMapper MAPPER = new ObjectMapper();
+    static final ObjectMapper MAPPER = Format.JSON.mapper;
+    private static final JsonCodec<ApiStatus> STATUS = JsonCodec.of(ApiStatus.class);
+    @SuppressWarnings("rawtypes")
+    private static final JsonCodec<Map> STATS = JsonCodec.of(Map.class);
+    private static final JsonCodec<BulkResult> BULK_RESULT = JsonCodec.of(BulkResult.class);
+    private static ConnectionPool pool;
+    private static ServerExecutor serverExecutor;
+    private static int bulkBatchSize = BulkInsert.DEFAULT_BATCH_SIZE;
+    private static int staticMaxAgeSec = StaticAssets.DEFAULT_MAX_AGE_SEC;
+    private static StaticAssets staticAssets;
+    private static EventFeed events = new EventFeed(EventFeed.DEFAULT_HISTORY, EventFeed.DEFAULT_CLIENT_BUFFER,
+            EventFeed.DEFAULT_HEARTBEAT_SEC);
+
+    static {
+        listen();
+    }
 
     public static void main(String[] args) throws Exception {
         // DB config: prefer environment variables, fallback to config/server.properties
+        Properties p = new Properties();
+        try (InputStream in = Files.newInputStream(Paths.get("config/server.properties"))) {
+            p.load(in);
+        } catch (Exception e) {
+            System.out.println("Warning: could not read config/server.properties, relying on env vars or defaults");
+        }
+
         String bd = System.getenv("DB_NAME");
         String host = System.getenv("DB_HOST");
         String user = System.getenv("DB_USER");
         String password = System.getenv("DB_PASS");
-
-        if (bd == null || host == null || user == null || password == null) {
-            try (InputStream in = Files.newInputStream(Paths.get("config/server.properties"))) {
-                Properties p = new Properties();
-                p.load(in);
-                if (bd == null) bd = p.getProperty("db.name");
-                if (host == null) host = p.getProperty("db.host");
-                if (user == null) user = p.getProperty("db.user");
-                if (password == null) password = p.getProperty("db.password");
-            } catch (Exception e) {
-                System.out.println("Warning: could not read config/server.properties, relying on env vars or defaults");
-            }
-        }
+        if (bd == null) bd = p.getProperty("db.name");
+        if (host == null) host = p.getProperty("db.host");
+        if (user == null) user = p.getProperty("db.user");
+        if (password == null) password = p.getProperty("db.password");
 
         // final defaults if still null
         if (bd == null) bd = "proyecto_conectores";
         if (host == null) host = "localhost";
         if (user == null) user = "rguido";
         if (password == null) password = "abc123";
+        String port = p.getProperty("db.port", "5432");
 
-        // Try to connect to database for all managers
+        events.close();
+        events = new EventFeed(Integer.parseInt(p.getProperty("sse.history", String.valueOf(EventFeed.DEFAULT_HISTORY))),
+                Integer.parseInt(p.getProperty("sse.clientBuffer", String.valueOf(EventFeed.DEFAULT_CLIENT_BUFFER))),
+                Integer.parseInt(p.getProperty("sse.heartbeatSec", String.valueOf(EventFeed.DEFAULT_HEARTBEAT_SEC))));
+
+        // One bounded pool shared by every manager
         try {
-            manager.openConnection(bd, host, user, password);
-            manageSocios.openConnection(bd, host, user, password);
-            manageLibros.openConnection(bd, host, user, password);
-            manageAlquileres.openConnection(bd, host, user, password);
-            manageEmpleados.openConnection(bd, host, user, password);
-            System.out.println("✅ Todos los módulos conectados a la BD");
+            String url = String.format("jdbc:postgresql://%s:%s/%s", host, port, bd);
+            connectManagers(ConnectionPool.fromProperties(url, user, password, p));
+            System.out.println("✅ Todos los módulos conectados a la BD (pool max=" + pool.getMaxSize() + ")");
         } catch (Exception e) {
             System.out.println("⚠️ Usando almacenamiento en memoria para los módulos");
         }
 
-        HttpServer http = HttpServer.create(new InetSocketAddress(8000), 0);
-        
+        int cacheSize = Integer.parseInt(p.getProperty("cache.maxSize", String.valueOf(EntityCache.DEFAULT_MAX_SIZE)));
+        long cacheTtl = Long.parseLong(p.getProperty("cache.ttlMs", String.valueOf(EntityCache.DEFAULT_TTL_MS)));
+        manageLibros.configureCache(cacheSize, cacheTtl);
+        manageSocios.configureCache(cacheSize, cacheTtl);
+
+        bulkBatchSize = Integer.parseInt(p.getProperty("bulk.batchSize", String.valueOf(BulkInsert.DEFAULT_BATCH_SIZE)));
+        Compression.configure(Integer.parseInt(p.getProperty("compression.minBytes", String.valueOf(Compression.DEFAULT_MIN_BYTES))),
+                Integer.parseInt(p.getProperty("compression.level", "6")));
+        RequestBody.configure(Long.parseLong(p.getProperty("server.maxBodyBytes", String.valueOf(RequestBody.DEFAULT_MAX_BYTES))));
+        staticMaxAgeSec = Integer.parseInt(p.getProperty("static.maxAgeSec", String.valueOf(StaticAssets.DEFAULT_MAX_AGE_SEC)));
+
+        ServerExecutor executor = ServerExecutor.fromProperties(p);
+        HttpServer http = createServer(8000, executor);
+        if (Boolean.parseBoolean(p.getProperty("static.watch", "false"))) {
+            staticAssets.watch();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            http.stop(1);
+            executor.shutdown();
+            if (pool != null) pool.close();
+        }));
+        System.out.println("Server started at http://localhost:8000 (executor=" + executor.getMode() + ")");
+        http.start();
+    }
+
+    /**
+     * Replaces every manager with a fresh instance. With a pool they run against the
+     * database, students excepted; with {@code null} they use their in-memory storage.
+     */
+    static void connectManagers(ConnectionPool connectionPool) {
+        manager = new ManageStudents();
+        manageSocios = new ManageSocios();
+        manageLibros = new ManageLibros();
+        manageAlquileres = new ManageAlquileres(manageLibros);
+        manageEmpleados = new ManageEmpleados();
+        listen();
+        pool = connectionPool;
+        if (connectionPool == null) return;
+        // students stay in memory: the schema in script.sql has no table for them
+        manageSocios.openConnection(connectionPool);
+        manageLibros.openConnection(connectionPool);
+        manageAlquileres.openConnection(connectionPool);
+        manageEmpleados.openConnection(connectionPool);
+    }
+
+    /** Sends the managers' change notifications to the /api/events feed. */
+    private static void listen() {
+        manageLibros.setChangeListener((type, data) -> events.publish(type, data));
+        manageAlquileres.setChangeListener((type, data) -> events.publish(type, data));
+    }
+
+    /**
+     * Creates the HTTP server, with the API routes, /metrics and the static files registered
+     * and running on the given executor, without starting it.
+     */
+    static HttpServer createServer(int port, ServerExecutor executor) throws IOException {
+        serverExecutor = executor;
+        HttpServer http = HttpServer.create(new InetSocketAddress(port), 0);
+        register(http, "/api/", routes());
+        register(http, "/metrics", new MetricsHandler());
+
+        // Static files, read once
+        staticAssets = new StaticAssets(Paths.get("web"), staticMaxAgeSec);
+        register(http, "/", staticAssets);
+        http.setExecutor(executor.executor());
+        return http;
+    }
+
+    /**
+     * Every API route. Managers are looked up when a request arrives, so the routes keep
+     * working after {@link #connectManagers} replaces them.
+     */
+    static Router routes() {
+        Router router = new Router();
+
         // Students endpoints
-        http.createContext("/api/students", new StudentsHandler());
-        http.createContext("/api/students/", new StudentByIdHandler());
-        
+        new CrudRoutes<>(Student.class, Student::getId, null, () -> manager).register(router, "/api/students");
+
         // Socios endpoints
-        http.createContext("/api/socios", new SociosHandler());
-        http.createContext("/api/socios/", new SocioByIdHandler());
-        
+        new CrudRoutes<>(Socio.class, Socio::getId, Socio::setId, () -> manageSocios).register(router, "/api/socios");
+        JsonCodec<Alquiler> alquileres = JsonCodec.of(Alquiler.class);
+        JsonCodec<Libro> libros = JsonCodec.of(Libro.class);
+        router.get("/api/socios/{id}/alquileres", (exchange, p) -> {
+            if (notModified(exchange, manageAlquileres.getVersion())) return;
+            WebServer.<Alquiler>writeList(exchange, alquileres, (page, sink) -> manageAlquileres.streamAlquileresDelSocio(p[0], page, sink));
+        });
+        router.get("/api/socios/export", new ExportHandler<>("socios", Socio.class,
+                (page, sink) -> manageSocios.streamAllSocios(page, sink), out -> manageSocios.copySociosCsv(out)));
+        router.post("/api/socios/bulk", new BulkHandler<>(Socio.class, Socio::getId,
+                (source, batchSize, copy, result) -> manageSocios.importSocios(source, batchSize, copy, result)));
+
         // Libros endpoints
-        http.createContext("/api/libros", new LibrosHandler());
-        http.createContext("/api/libros/", new LibroByIdHandler());
-        http.createContext("/api/libros/disponibles", new LibrosDisponiblesHandler());
-        http.createContext("/api/libros/alquilados", new LibrosAlquiladosHandler());
-        
+        new CrudRoutes<>(Libro.class, Libro::getId, Libro::setId, () -> manageLibros).register(router, "/api/libros");
+        router.get("/api/libros/{id}/alquileres", (exchange, p) -> {
+            if (notModified(exchange, manageAlquileres.getVersion())) return;
+            WebServer.<Alquiler>writeList(exchange, alquileres, (page, sink) -> manageAlquileres.streamAlquileresDelLibro(p[0], page, sink));
+        });
+        router.get("/api/libros/disponibles", (exchange, p) -> {
+            if (notModified(exchange, manageLibros.getVersion())) return;
+            writeList(exchange, libros, manageLibros::streamLibrosDisponibles);
+        });
+        router.get("/api/libros/alquilados", (exchange, p) -> {
+            if (notModified(exchange, manageLibros.getVersion())) return;
+            writeList(exchange, libros, manageLibros::streamLibrosAlquilados);
+        });
+        router.get("/api/libros/export", new ExportHandler<>("libros", Libro.class,
+                (page, sink) -> manageLibros.streamAllLibros(page, sink), out -> manageLibros.copyLibrosCsv(out)));
+        router.post("/api/libros/bulk", new BulkHandler<>(Libro.class, Libro::getId,
+                (source, batchSize, copy, result) -> manageLibros.importLibros(source, batchSize, copy, result)));
+
         // Alquileres endpoints
-        http.createContext("/api/alquileres", new AlquileresHandler());
-        http.createContext("/api/alquileres/", new AlquilerByIdHandler());
-        http.createContext("/api/alquileres/activos", new AlquileresActivosHandler());
-        http.createContext("/api/alquileres/historial", new AlquileresHistorialHandler());
-        
+        new CrudRoutes<>(Alquiler.class, Alquiler::getId, Alquiler::setId, () -> manageAlquileres).register(router, "/api/alquileres");
+        // a rental is never edited, PUT only returns the libro
+        router.put("/api/alquileres/{id}", WebServer::devolverAlquiler);
+        router.get("/api/alquileres/activos", (exchange, p) -> {
+            if (notModified(exchange, manageAlquileres.getVersion())) return;
+            writeList(exchange, alquileres, manageAlquileres::streamAlquileresActivos);
+        });
+        router.get("/api/alquileres/historial", (exchange, p) -> {
+            if (notModified(exchange, manageAlquileres.getVersion())) return;
+            writeList(exchange, alquileres, manageAlquileres::streamHistorialAlquileres);
+        });
+        router.get("/api/alquileres/export", new ExportHandler<>("alquileres", Alquiler.class,
+                (page, sink) -> manageAlquileres.streamAllAlquileres(page, sink), out -> manageAlquileres.copyAlquileresCsv(out)));
+        router.post("/api/alquileres/bulk", new BulkHandler<>(Alquiler.class, Alquiler::getId,
+                (source, batchSize, copy, result) -> manageAlquileres.importAlquileres(source, result)));
+
         // Empleados endpoints
-        http.createContext("/api/empleados", new EmpleadosHandler());
-        http.createContext("/api/empleados/", new EmpleadoByIdHandler());
-        
-        // Static files
-        http.createContext("/", new StaticHandler());
-        http.setExecutor(null);
-        System.out.println("Server started at http://localhost:8000");
-        http.start();
+        new CrudRoutes<>(Empleado.class, Empleado::getId, Empleado::setId, () -> manageEmpleados).register(router, "/api/empleados");
+        router.get("/api/empleados/export", new ExportHandler<>("empleados", Empleado.class,
+                (page, sink) -> manageEmpleados.streamAllEmpleados(page, sink), out -> manageEmpleados.copyEmpleadosCsv(out)));
+        router.post("/api/empleados/bulk", new BulkHandler<>(Empleado.class, Empleado::getId,
+                (source, batchSize, copy, result) -> manageEmpleados.importEmpleados(source, batchSize, copy, result)));
+
+        // Change feed (Server-Sent Events)
+        router.get("/api/events", (exchange, p) -> events.handle(exchange, p));
+
+        // Server status
+        router.get("/api/server/stats", WebServer::serverStats);
+        return router;
     }
 
-    static class StudentsHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            try {
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    ArrayList<Student> list = manager.getStudents();
-                    String json = MAPPER.writeValueAsString(list);
-                    writeJson(exchange, 200, json);
-                } else if (method.equalsIgnoreCase("POST")) {
-                    String body = readBody(exchange);
-                    Student s = MAPPER.readValue(body, Student.class);
-                    boolean ok = manager.addStudent(s);
-                    if (ok) writeJson(exchange, 201, MAPPER.writeValueAsString(new ApiStatus("created")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                } else {
-                    exchange.sendResponseHeaders(405, -1);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                writeJson(exchange, 500, "{\"error\":\"server error\"}");
-            }
-        }
+    private static void register(HttpServer http, String path, HttpHandler handler) {
+        HttpContext context = http.createContext(path, handler);
+        context.getFilters().add(new MetricsFilter(Metrics.route(path)));
+        context.getFilters().add(serverExecutor.overloadFilter());
     }
 
-    static class StudentByIdHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            try {
-                URI uri = exchange.getRequestURI();
-                String path = uri.getPath();
-                // expected /api/students/{id}
-                String[] parts = path.split("/");
-                if (parts.length < 4) { exchange.sendResponseHeaders(400, -1); return; }
-                String id = parts[3];
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    Student s = manager.getStudent(id);
-                    if (s != null) writeJson(exchange, 200, MAPPER.writeValueAsString(s));
-                    else exchange.sendResponseHeaders(404, -1);
-                } else if (method.equalsIgnoreCase("DELETE")) {
-                    boolean ok = manager.deleteStudent(id);
-                    if (ok) writeJson(exchange, 200, MAPPER.writeValueAsString(new ApiStatus("deleted")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                } else if (method.equalsIgnoreCase("PUT")) {
-                    String body = readBody(exchange);
-                    Student s = MAPPER.readValue(body, Student.class);
-                    boolean ok = manager.modifyStudent(id, s);
-                    if (ok) writeJson(exchange, 200, MAPPER.writeValueAsString(new ApiStatus("updated")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                } else {
-                    exchange.sendResponseHeaders(405, -1);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                writeJson(exchange, 500, "{\"error\":\"server error\"}");
-            }
-        }
+    /**
+     * Tags a read with its table's version. Returns true, with the 304 already sent, when the
+     * client's If-None-Match holds that tag, before any query runs or any row is serialized.
+     * The tag is weak because the same version is sent both compressed and not.
+     */
+    static boolean notModified(HttpExchange exchange, long version) throws IOException {
+        String etag = "W/\"" + version + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        // cache, but ask every time
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        // the same tag for every format: weak tags only promise equivalent content
+        vary(exchange, "Accept");
+        if (!StaticAssets.matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) return false;
+        exchange.sendResponseHeaders(304, -1);
+        return true;
     }
 
-    static class StaticHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            String path = exchange.getRequestURI().getPath();
-            if (path.equals("/")) path = "/index.html";
-            File f = new File("web" + path);
-            if (!f.exists() || f.isDirectory()) {
-                exchange.sendResponseHeaders(404, -1);
-                return;
-            }
-            String contentType = guessContentType(f.getName());
-            byte[] bytes = Files.readAllBytes(f.toPath());
-            exchange.getResponseHeaders().add("Content-Type", contentType + ";charset=utf-8");
-            exchange.sendResponseHeaders(200, bytes.length);
-            OutputStream os = exchange.getResponseBody();
-            os.write(bytes);
-            os.close();
-        }
+    /** The {"status": ...} reply of the write routes: {@code status} when it worked, 500 "error" when not. */
+    static void writeStatus(HttpExchange exchange, boolean ok, int code, String status) throws IOException {
+        if (ok) writeValue(exchange, code, STATUS, new ApiStatus(status));
+        else writeValue(exchange, 500, STATUS, new ApiStatus("error"));
     }
 
-    // ============= SOCIOS HANDLERS =============
-    static class SociosHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            try {
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    ArrayList<Socio> list = manageSocios.getAllSocios();
-                    writeJson(exchange, 200, MAPPER.writeValueAsString(list));
-                } else if (method.equalsIgnoreCase("POST")) {
-                    String body = readBody(exchange);
-                    Socio s = MAPPER.readValue(body, Socio.class);
-                    if (s.getId() == null || s.getId().isEmpty()) {
-                        s.setId(UUID.randomUUID().toString());
-                    }
-                    boolean ok = manageSocios.addSocio(s);
-                    if (ok) writeJson(exchange, 201, MAPPER.writeValueAsString(new ApiStatus("created")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                } else {
-                    exchange.sendResponseHeaders(405, -1);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                writeJson(exchange, 500, "{\"error\":\"server error\"}");
-            }
+    /** PUT /api/alquileres/{id} with {"accion":"devolver"}. */
+    private static void devolverAlquiler(HttpExchange exchange, String[] params) throws IOException {
+        if ("devolver".equals(RequestBody.field(exchange, "accion"))) {
+            writeStatus(exchange, manageAlquileres.devolverLibro(params[0]), 200, "returned");
+        } else {
+            exchange.sendResponseHeaders(400, -1);
         }
     }
 
-    static class SocioByIdHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            try {
-                String path = exchange.getRequestURI().getPath();
-                String[] parts = path.split("/");
-                if (parts.length < 4) { exchange.sendResponseHeaders(400, -1); return; }
-                String id = parts[3];
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    Socio s = manageSocios.getSocioById(id);
-                    if (s != null) writeJson(exchange, 200, MAPPER.writeValueAsString(s));
-                    else exchange.sendResponseHeaders(404, -1);
-                } else if (method.equalsIgnoreCase("DELETE")) {
-                    boolean ok = manageSocios.deleteSocio(id);
-                    if (ok) writeJson(exchange, 200, MAPPER.writeValueAsString(new ApiStatus("deleted")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                } else if (method.equalsIgnoreCase("PUT")) {
-                    String body = readBody(exchange);
-                    Socio s = MAPPER.readValue(body, Socio.class);
-                    boolean ok = manageSocios.updateSocio(id, s);
-                    if (ok) writeJson(exchange, 200, MAPPER.writeValueAsString(new ApiStatus("updated")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                } else {
-                    exchange.sendResponseHeaders(405, -1);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                writeJson(exchange, 500, "{\"error\":\"server error\"}");
-            }
+    // ============= SERVER STATUS =============
+    private static void serverStats(HttpExchange exchange, String[] params) throws IOException {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("executor", serverExecutor.getMode());
+        stats.put("active", serverExecutor.getActiveCount());
+        stats.put("queued", serverExecutor.getQueuedCount());
+        stats.put("queueCapacity", serverExecutor.getQueueCapacity());
+        stats.put("rejected", serverExecutor.getRejectedCount());
+        stats.put("completed", serverExecutor.getCompletedCount());
+        stats.put("storage", pool != null ? "database" : "memory");
+        if (pool != null) {
+            stats.put("poolActive", pool.getActiveCount());
+            stats.put("poolIdle", pool.getIdleCount());
+            stats.put("poolTotal", pool.getTotalCount());
+            stats.put("cacheLibros", cacheStats(manageLibros.getCache()));
+            stats.put("cacheSocios", cacheStats(manageSocios.getCache()));
+            stats.put("rentalRetries", manageAlquileres.getReintentos());
         }
+        writeValue(exchange, 200, STATS, stats);
     }
 
-    // ============= LIBROS HANDLERS =============
-    static class LibrosHandler implements HttpHandler {
+    /** Prometheus text format: the {@link Metrics} registry plus the server's own gauges. */
+    static class MetricsHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             try {
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    ArrayList<Libro> list = manageLibros.getAllLibros();
-                    writeJson(exchange, 200, MAPPER.writeValueAsString(list));
-                } else if (method.equalsIgnoreCase("POST")) {
-                    String body = readBody(exchange);
-                    Libro l = MAPPER.readValue(body, Libro.class);
-                    if (l.getId() == null || l.getId().isEmpty()) {
-                        l.setId(UUID.randomUUID().toString());
-                    }
-                    boolean ok = manageLibros.addLibro(l);
-                    if (ok) writeJson(exchange, 201, MAPPER.writeValueAsString(new ApiStatus("created")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                } else {
+                if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
                     exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                StringBuilder out = new StringBuilder(16 * 1024);
+                Metrics.write(out);
+                boolean database = pool != null;
+                Metrics.gauge(out, "biblioteca_storage_mode", "1 for the storage the managers are using.", "mode=\"database\"", database ? 1 : 0);
+                Metrics.sample(out, "biblioteca_storage_mode", "mode=\"memory\"", database ? 0 : 1);
+                Metrics.gauge(out, "http_executor_active", "Requests being handled.", "", serverExecutor.getActiveCount());
+                Metrics.gauge(out, "http_executor_queued", "Requests waiting for a handler thread.", "", serverExecutor.getQueuedCount());
+                out.append("# HELP http_executor_rejected_total Requests answered 503 because the executor was full.\n");
+                out.append("# TYPE http_executor_rejected_total counter\n");
+                Metrics.sample(out, "http_executor_rejected_total", "", serverExecutor.getRejectedCount());
+                Metrics.gauge(out, "sse_clients", "Clients connected to /api/events.", "", events.getClients());
+                out.append("# HELP sse_dropped_total /api/events clients disconnected for falling behind.\n");
+                out.append("# TYPE sse_dropped_total counter\n");
+                Metrics.sample(out, "sse_dropped_total", "", events.getDropped());
+                if (database) {
+                    Metrics.gauge(out, "db_pool_connections", "Pool connections by state.", "state=\"active\"", pool.getActiveCount());
+                    Metrics.sample(out, "db_pool_connections", "state=\"idle\"", pool.getIdleCount());
+                    Metrics.gauge(out, "db_pool_max_connections", "Pool size limit.", "", pool.getMaxSize());
+                    out.append("# HELP cache_requests_total By-id cache lookups by result.\n");
+                    out.append("# TYPE cache_requests_total counter\n");
+                    cacheSamples(out, "libros", manageLibros.getCache());
+                    cacheSamples(out, "socios", manageSocios.getCache());
+                    out.append("# HELP rental_retries_total Rental transactions retried after a serialization failure or deadlock.\n");
+                    out.append("# TYPE rental_retries_total counter\n");
+                    Metrics.sample(out, "rental_retries_total", "", manageAlquileres.getReintentos());
+                }
+                byte[] bytes = out.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(bytes);
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -282,259 +360,284 @@ public class WebServer {
         }
     }
 
-    static class LibrosDisponiblesHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            try {
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    ArrayList<Libro> list = manageLibros.getLibrosDisponibles();
-                    writeJson(exchange, 200, MAPPER.writeValueAsString(list));
-                } else {
-                    exchange.sendResponseHeaders(405, -1);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                writeJson(exchange, 500, "{\"error\":\"server error\"}");
-            }
-        }
+    private static void cacheSamples(StringBuilder out, String cache, EntityCache<?> stats) {
+        Metrics.sample(out, "cache_requests_total", "cache=\"" + cache + "\",result=\"hit\"", stats.getHits());
+        Metrics.sample(out, "cache_requests_total", "cache=\"" + cache + "\",result=\"miss\"", stats.getMisses());
     }
 
-    static class LibrosAlquiladosHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            try {
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    ArrayList<Libro> list = manageLibros.getLibrosAlquilados();
-                    writeJson(exchange, 200, MAPPER.writeValueAsString(list));
-                } else {
-                    exchange.sendResponseHeaders(405, -1);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                writeJson(exchange, 500, "{\"error\":\"server error\"}");
-            }
-        }
+    private static Map<String, Object> cacheStats(EntityCache<?> cache) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", cache.size());
+        stats.put("hits", cache.getHits());
+        stats.put("misses", cache.getMisses());
+        stats.put("evictions", cache.getEvictions());
+        return stats;
     }
 
-    static class LibroByIdHandler implements HttpHandler {
+    /** A manager bulk import method, see {@link BulkInsert}. */
+    interface Importer<T> {
+        BulkResult run(RowSource<T> source, int batchSize, boolean copy, BulkResult result) throws IOException;
+    }
+
+    /**
+     * POST /api/{entity}/bulk: streams an NDJSON or CSV body into the manager and answers with
+     * the {@link BulkResult}. The format comes from {@code ?format=} or the Content-Type,
+     * NDJSON by default; {@code ?method=copy} asks for PostgreSQL COPY and {@code ?batchSize=}
+     * overrides {@code bulk.batchSize}.
+     */
+    static class BulkHandler<T> implements Router.Route {
+        private final Class<T> type;
+        private final Function<T, String> id;
+        private final Importer<T> importer;
+
+        BulkHandler(Class<T> type, Function<T, String> id, Importer<T> importer) {
+            this.type = type;
+            this.id = id;
+            this.importer = importer;
+        }
+
         @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            try {
-                String path = exchange.getRequestURI().getPath();
-                String[] parts = path.split("/");
-                if (parts.length < 4) { exchange.sendResponseHeaders(400, -1); return; }
-                String id = parts[3];
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    Libro l = manageLibros.getLibroById(id);
-                    if (l != null) writeJson(exchange, 200, MAPPER.writeValueAsString(l));
-                    else exchange.sendResponseHeaders(404, -1);
-                } else if (method.equalsIgnoreCase("DELETE")) {
-                    boolean ok = manageLibros.deleteLibro(id);
-                    if (ok) writeJson(exchange, 200, MAPPER.writeValueAsString(new ApiStatus("deleted")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                } else if (method.equalsIgnoreCase("PUT")) {
-                    String body = readBody(exchange);
-                    Libro l = MAPPER.readValue(body, Libro.class);
-                    boolean ok = manageLibros.updateLibro(id, l);
-                    if (ok) writeJson(exchange, 200, MAPPER.writeValueAsString(new ApiStatus("updated")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                } else {
-                    exchange.sendResponseHeaders(405, -1);
+        public void handle(HttpExchange exchange, String[] params) throws IOException {
+            String query = exchange.getRequestURI().getRawQuery();
+            String format = queryParam(query, "format");
+            if (format == null) {
+                String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+                format = contentType != null && contentType.startsWith("text/csv") ? BulkReader.CSV : BulkReader.NDJSON;
+            }
+            if (!format.equals(BulkReader.CSV) && !format.equals(BulkReader.NDJSON)) {
+                writeJson(exchange, 400, "{\"error\":\"format must be csv or ndjson\"}");
+                return;
+            }
+            int batchSize = bulkBatchSize;
+            String batchParam = queryParam(query, "batchSize");
+            if (batchParam != null) {
+                try {
+                    batchSize = Integer.parseInt(batchParam);
+                } catch (NumberFormatException e) {
+                    batchSize = 0;
+                }
+                if (batchSize < 1 || batchSize > 10_000) {
+                    writeJson(exchange, 400, "{\"error\":\"batchSize must be between 1 and 10000\"}");
+                    return;
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-                writeJson(exchange, 500, "{\"error\":\"server error\"}");
             }
+            boolean copy = "copy".equals(queryParam(query, "method"));
+
+            BulkResult result = new BulkResult();
+            try (InputStream in = exchange.getRequestBody()) {
+                importer.run(new BulkReader<>(in, format, MAPPER, type, id, result), batchSize, copy, result);
+            }
+            result.finish();
+            writeValue(exchange, result.getFailed() == 0 ? 200 : 207, BULK_RESULT, result);
         }
     }
 
-    // ============= ALQUILERES HANDLERS =============
-    static class AlquileresHandler implements HttpHandler {
+    /** A manager method that writes a whole table as CSV through COPY, false when it cannot. */
+    interface CopyOut {
+        boolean copy(OutputStream out) throws IOException;
+    }
+
+    /**
+     * GET /api/{entity}/export?format=csv|ndjson: streams the whole table, compressed like
+     * the other API responses. CSV comes from COPY TO STDOUT when the database is PostgreSQL;
+     * every other case streams the rows from the manager's cursor or in-memory store. The
+     * table is never collected in the heap. An export that fails part way is aborted, never
+     * ended as if it were complete.
+     */
+    static class ExportHandler<T> implements Router.Route {
+        private final String name;
+        private final Class<T> type;
+        private final ObjectWriter writer;
+        private final ListStream<T> rows;
+        private final CopyOut copy;
+
+        ExportHandler(String name, Class<T> type, ListStream<T> rows, CopyOut copy) {
+            this.name = name;
+            this.type = type;
+            // NDJSON is JSON whatever the Accept header says
+            this.writer = JsonCodec.of(type).rows(Format.JSON);
+            this.rows = rows;
+            this.copy = copy;
+        }
+
         @Override
-        public void handle(HttpExchange exchange) throws IOException {
+        public void handle(HttpExchange exchange, String[] params) throws IOException {
+            String format = queryParam(exchange.getRequestURI().getRawQuery(), "format");
+            if (format == null) format = BulkReader.NDJSON;
+            boolean csv = format.equals(BulkReader.CSV);
+            if (!csv && !format.equals(BulkReader.NDJSON)) {
+                writeJson(exchange, 400, "{\"error\":\"format must be csv or ndjson\"}");
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", (csv ? "text/csv" : "application/x-ndjson") + ";charset=utf-8");
+            exchange.getResponseHeaders().add("Content-Disposition", "attachment; filename=\"" + name + "." + format + "\"");
+
+            Compression.ResponseStream body = Compression.stream(exchange, 200);
+            OutputStream os = new BufferedOutputStream(body, 8192);
             try {
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    ArrayList<Alquiler> list = manageAlquileres.getAllAlquileres();
-                    writeJson(exchange, 200, MAPPER.writeValueAsString(list));
-                } else if (method.equalsIgnoreCase("POST")) {
-                    String body = readBody(exchange);
-                    Alquiler a = MAPPER.readValue(body, Alquiler.class);
-                    if (a.getId() == null || a.getId().isEmpty()) {
-                        a.setId(UUID.randomUUID().toString());
+                if (csv) {
+                    if (!copy.copy(os)) {
+                        Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+                        CsvRowWriter<T> out = new CsvRowWriter<>(MAPPER, type, writer);
+                        out.writeHeader();
+                        rows.stream(PageRequest.ALL, out::write);
+                        writer.flush();
                     }
-                    boolean ok = manageAlquileres.registrarAlquiler(a);
-                    if (ok) writeJson(exchange, 201, MAPPER.writeValueAsString(new ApiStatus("created")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
                 } else {
-                    exchange.sendResponseHeaders(405, -1);
+                    JsonGenerator gen = MAPPER.getFactory().createGenerator(os);
+                    gen.setRootValueSeparator(null);
+                    rows.stream(PageRequest.ALL, row -> {
+                        writer.writeValue(gen, row);
+                        gen.writeRaw('\n');
+                    });
+                    gen.flush();
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-                writeJson(exchange, 500, "{\"error\":\"server error\"}");
+            } catch (IOException | RuntimeException e) {
+                // a table cut short must not end like a whole one: no last chunk, no gzip trailer
+                body.abort();
+                throw e;
             }
+            os.close();
         }
     }
 
-    static class AlquileresActivosHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            try {
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    ArrayList<Alquiler> list = manageAlquileres.getAlquileresActivos();
-                    writeJson(exchange, 200, MAPPER.writeValueAsString(list));
-                } else {
-                    exchange.sendResponseHeaders(405, -1);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                writeJson(exchange, 500, "{\"error\":\"server error\"}");
-            }
+    /** Adds {@code header} to the response's Vary list. */
+    static void vary(HttpExchange exchange, String header) {
+        String vary = exchange.getResponseHeaders().getFirst("Vary");
+        if (vary == null) {
+            exchange.getResponseHeaders().set("Vary", header);
+        } else if (!vary.contains(header)) {
+            exchange.getResponseHeaders().set("Vary", vary + ", " + header);
         }
     }
 
-    static class AlquileresHistorialHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            try {
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    ArrayList<Alquiler> list = manageAlquileres.getHistorialAlquileres();
-                    writeJson(exchange, 200, MAPPER.writeValueAsString(list));
-                } else {
-                    exchange.sendResponseHeaders(405, -1);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                writeJson(exchange, 500, "{\"error\":\"server error\"}");
-            }
+    /** True when the request's Accept-Encoding lists gzip without q=0. */
+    static boolean acceptsGzip(HttpExchange exchange) {
+        return acceptsEncoding(exchange, "gzip");
+    }
+
+    /** True when the request's Accept-Encoding lists {@code coding} without q=0. */
+    static boolean acceptsEncoding(HttpExchange exchange, String coding) {
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (accept == null) return false;
+        for (String listed : accept.split(",")) {
+            String[] parts = listed.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase(coding)) continue;
+            return parts.length < 2 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
         }
+        return false;
     }
 
-    static class AlquilerByIdHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            try {
-                String path = exchange.getRequestURI().getPath();
-                String[] parts = path.split("/");
-                if (parts.length < 4) { exchange.sendResponseHeaders(400, -1); return; }
-                String id = parts[3];
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    Alquiler a = manageAlquileres.getAlquilerById(id);
-                    if (a != null) writeJson(exchange, 200, MAPPER.writeValueAsString(a));
-                    else exchange.sendResponseHeaders(404, -1);
-                } else if (method.equalsIgnoreCase("DELETE")) {
-                    boolean ok = manageAlquileres.deleteAlquiler(id);
-                    if (ok) writeJson(exchange, 200, MAPPER.writeValueAsString(new ApiStatus("deleted")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                } else if (method.equalsIgnoreCase("PUT")) {
-                    String body = readBody(exchange);
-                    String accion = MAPPER.readTree(body).get("accion").asText();
-                    if ("devolver".equals(accion)) {
-                        boolean ok = manageAlquileres.devolverLibro(id);
-                        if (ok) writeJson(exchange, 200, MAPPER.writeValueAsString(new ApiStatus("returned")));
-                        else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                    } else {
-                        exchange.sendResponseHeaders(400, -1);
-                    }
-                } else {
-                    exchange.sendResponseHeaders(405, -1);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                writeJson(exchange, 500, "{\"error\":\"server error\"}");
+    /** A manager list method that streams the rows of one page and returns the next cursor. */
+    interface ListStream<T> {
+        String stream(PageRequest page, RowConsumer<T> sink) throws IOException;
+    }
+
+    /**
+     * Writes a list endpoint row by row, chunked and compressed once it outgrows
+     * {@code compression.minBytes}. Without pagination parameters the whole list is sent as
+     * a JSON array; with {@code limit}, {@code after} or {@code offset} the response is a
+     * page object {@code {"items":[...],"next":"<id>"}}, in the {@link Format} the client
+     * asked for.
+     */
+    static <T> void writeList(HttpExchange exchange, JsonCodec<T> codec, ListStream<T> query) throws IOException {
+        PageRequest page;
+        try {
+            page = pageRequest(exchange.getRequestURI().getRawQuery());
+        } catch (IllegalArgumentException e) {
+            writeJson(exchange, 400, "{\"error\":\"invalid pagination parameters\"}");
+            return;
+        }
+        boolean paged = page != null;
+        if (!paged) page = PageRequest.ALL;
+
+        Format format = Format.negotiate(exchange);
+        ObjectWriter rows = codec.rows(format);
+        exchange.getResponseHeaders().add("Content-Type", format.contentType);
+        vary(exchange, "Accept");
+        Compression.ResponseStream os = Compression.stream(exchange, 200);
+        // closing must not complete a document the query failed to fill
+        JsonGenerator gen = format.mapper.getFactory().createGenerator(os)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        try {
+            if (paged) {
+                gen.writeStartObject();
+                gen.writeFieldName("items");
+            }
+            gen.writeStartArray();
+            String next = query.stream(page, row -> rows.writeValue(gen, row));
+            gen.writeEndArray();
+            if (paged) {
+                gen.writeStringField("next", next);
+                gen.writeEndObject();
             }
+        } catch (IOException | RuntimeException e) {
+            // nothing sent yet: the Router answers 500; otherwise it drops the connection
+            os.abort();
+            throw e;
+        } finally {
+            gen.close();
         }
     }
 
-    // ============= EMPLEADOS HANDLERS =============
-    static class EmpleadosHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            try {
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    ArrayList<Empleado> list = manageEmpleados.getAllEmpleados();
-                    writeJson(exchange, 200, MAPPER.writeValueAsString(list));
-                } else if (method.equalsIgnoreCase("POST")) {
-                    String body = readBody(exchange);
-                    Empleado e = MAPPER.readValue(body, Empleado.class);
-                    if (e.getId() == null || e.getId().isEmpty()) {
-                        e.setId(UUID.randomUUID().toString());
-                    }
-                    boolean ok = manageEmpleados.addEmpleado(e);
-                    if (ok) writeJson(exchange, 201, MAPPER.writeValueAsString(new ApiStatus("created")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                } else {
-                    exchange.sendResponseHeaders(405, -1);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                writeJson(exchange, 500, "{\"error\":\"server error\"}");
+    /** Parses limit/after/offset from a raw query string, or returns null if none is present. */
+    static PageRequest pageRequest(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) return null;
+        int limit = 0;
+        int offset = 0;
+        String after = null;
+        boolean paged = false;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) continue;
+            String key = pair.substring(0, eq);
+            String value = URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            if (key.equals("limit")) {
+                limit = Integer.parseInt(value);
+                paged = true;
+            } else if (key.equals("offset")) {
+                offset = Integer.parseInt(value);
+                paged = true;
+            } else if (key.equals("after")) {
+                after = value;
+                paged = true;
             }
         }
+        return paged ? new PageRequest(limit, after, offset) : null;
     }
 
-    static class EmpleadoByIdHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            try {
-                String path = exchange.getRequestURI().getPath();
-                String[] parts = path.split("/");
-                if (parts.length < 4) { exchange.sendResponseHeaders(400, -1); return; }
-                String id = parts[3];
-                String method = exchange.getRequestMethod();
-                if (method.equalsIgnoreCase("GET")) {
-                    Empleado e = manageEmpleados.getEmpleadoById(id);
-                    if (e != null) writeJson(exchange, 200, MAPPER.writeValueAsString(e));
-                    else exchange.sendResponseHeaders(404, -1);
-                } else if (method.equalsIgnoreCase("DELETE")) {
-                    boolean ok = manageEmpleados.deleteEmpleado(id);
-                    if (ok) writeJson(exchange, 200, MAPPER.writeValueAsString(new ApiStatus("deleted")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                } else if (method.equalsIgnoreCase("PUT")) {
-                    String body = readBody(exchange);
-                    Empleado e = MAPPER.readValue(body, Empleado.class);
-                    boolean ok = manageEmpleados.updateEmpleado(id, e);
-                    if (ok) writeJson(exchange, 200, MAPPER.writeValueAsString(new ApiStatus("updated")));
-                    else writeJson(exchange, 500, MAPPER.writeValueAsString(new ApiStatus("error")));
-                } else {
-                    exchange.sendResponseHeaders(405, -1);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                writeJson(exchange, 500, "{\"error\":\"server error\"}");
+    /** Returns the decoded value of {@code name} in a raw query string, or null. */
+    static String queryParam(String rawQuery, String name) {
+        if (rawQuery == null) return null;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
             }
         }
+        return null;
     }
 
-    private static String guessContentType(String name) {
-        if (name.endsWith(".html")) return "text/html";
-        if (name.endsWith(".js")) return "application/javascript";
-        if (name.endsWith(".css")) return "text/css";
-        return "application/octet-stream";
+    static void writeJson(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json;charset=utf-8");
+        Compression.send(exchange, status, bytes);
     }
 
-    private static String readBody(HttpExchange exchange) throws IOException {
-        InputStream is = exchange.getRequestBody();
-        return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+    /** Serializes {@code value} straight to bytes, in the {@link Format} the client asked for. */
+    static <T> void writeValue(HttpExchange exchange, int status, JsonCodec<T> codec, T value) throws IOException {
+        Format format = Format.negotiate(exchange);
+        exchange.getResponseHeaders().add("Content-Type", format.contentType);
+        vary(exchange, "Accept");
+        Compression.send(exchange, status, codec.writer(format).writeValueAsBytes(value));
     }
 
-    private static void writeJson(HttpExchange exchange, int status, String body) throws IOException {
-        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
-        exchange.getResponseHeaders().add("Content-Type", "application/json;charset=utf-8");
-        exchange.sendResponseHeaders(status, bytes.length);
-        OutputStream os = exchange.getResponseBody();
-        os.write(bytes);
-        os.close();
+    /** Reads a POST or PUT body in the {@link Format} its Content-Type names, within {@link RequestBody}'s limit. */
+    static <T> T readValue(HttpExchange exchange, JsonCodec<T> codec) throws IOException {
+        return codec.reader(Format.ofRequest(exchange)).readValue(RequestBody.open(exchange));
     }
 
-    private static class ApiStatus {
+    static class ApiStatus {
         public String status;
         public ApiStatus(String status) { this.status = status; }
     }
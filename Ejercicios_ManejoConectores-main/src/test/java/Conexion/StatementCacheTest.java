@@ -0,0 +1,123 @@
+package Conexion;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import metrics.Metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StatementCacheTest {
+    private static final String SELECT = "SELECT nombre FROM cache_test WHERE id = ?";
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        // one connection, so every borrow sees the same cache
+        pool = new ConnectionPool("jdbc:h2:mem:stmtcache;DB_CLOSE_DELAY=-1", "sa", "", 1, 1, 5000, 60000, 2, 2, -1);
+        try (Connection c = pool.getConnection();
+             PreparedStatement ps = c.prepareStatement("CREATE TABLE IF NOT EXISTS cache_test (id INT PRIMARY KEY, nombre VARCHAR(20))")) {
+            ps.executeUpdate();
+        }
+        try (Connection c = pool.getConnection();
+             PreparedStatement ps = c.prepareStatement("MERGE INTO cache_test KEY (id) VALUES (?, ?)")) {
+            for (int i = 1; i <= 3; i++) {
+                ps.setInt(1, i);
+                ps.setString(2, "n" + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void theSameSqlIsPreparedOncePerConnection() throws SQLException {
+        long hits = Metrics.STATEMENT_CACHE_HITS.sum();
+        for (int i = 1; i <= 3; i++) {
+            assertEquals("n" + i, nombre(i));
+        }
+        assertEquals(hits + 2, Metrics.STATEMENT_CACHE_HITS.sum());
+
+        try (Connection c = pool.getConnection();
+             PreparedStatement first = c.prepareStatement(SELECT);
+             PreparedStatement second = c.prepareStatement(SELECT)) {
+            // the cached one is lent, the second gets a statement of its own
+            first.setInt(1, 1);
+            second.setInt(1, 2);
+            try (ResultSet a = first.executeQuery(); ResultSet b = second.executeQuery()) {
+                assertTrue(a.next() && b.next());
+                assertEquals("n1", a.getString(1));
+                assertEquals("n2", b.getString(1));
+            }
+        }
+    }
+
+    @Test
+    public void aReturnedStatementIsResetAndClosedToItsBorrower() throws SQLException {
+        PreparedStatement leaked;
+        ResultSet open;
+        try (Connection c = pool.getConnection()) {
+            leaked = c.prepareStatement(SELECT);
+            leaked.setInt(1, 1);
+            leaked.setFetchSize(1);
+            open = leaked.executeQuery();
+            // neither the result set nor the statement closed: the connection's close takes them back
+        }
+        assertTrue(leaked.isClosed());
+        assertTrue(open.isClosed());
+        assertThrows(SQLException.class, () -> leaked.setInt(1, 2));
+
+        long hits = Metrics.STATEMENT_CACHE_HITS.sum();
+        try (Connection c = pool.getConnection(); PreparedStatement ps = c.prepareStatement(SELECT)) {
+            assertEquals(hits + 1, Metrics.STATEMENT_CACHE_HITS.sum());
+            assertFalse(ps.isClosed());
+            assertNotEquals(1, ps.getFetchSize());
+            // the last borrower's parameter is gone
+            assertThrows(SQLException.class, ps::executeQuery);
+        }
+    }
+
+    @Test
+    public void theLeastRecentlyUsedStatementIsEvicted() throws SQLException {
+        long evictions = Metrics.STATEMENT_CACHE_EVICTIONS.sum();
+        nombre(1);
+        try (Connection c = pool.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM cache_test")) {
+            ps.executeQuery().close();
+        }
+        // a third text in a cache of two
+        try (Connection c = pool.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT MAX(id) FROM cache_test")) {
+            ps.executeQuery().close();
+        }
+        assertTrue(Metrics.STATEMENT_CACHE_EVICTIONS.sum() > evictions);
+        long misses = Metrics.STATEMENT_CACHE_MISSES.sum();
+        assertEquals("n2", nombre(2));
+        assertEquals(misses + 1, Metrics.STATEMENT_CACHE_MISSES.sum());
+    }
+
+    private String nombre(int id) throws SQLException {
+        try (Connection c = pool.getConnection(); PreparedStatement ps = c.prepareStatement(SELECT)) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package biblioteca;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import Conexion.ConnectionPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AlquileresLookupTest {
+    private ConnectionPool pool;
+
+    @AfterEach
+    public void tearDown() {
+        if (pool != null) pool.close();
+    }
+
+    @Test
+    public void inMemoryLookupsBySocioAndLibro() {
+        assertLookups(new ManageAlquileres());
+    }
+
+    @Test
+    public void databaseLookupsBySocioAndLibroUseTheCompositeIndexes() throws Exception {
+        pool = new ConnectionPool("jdbc:h2:mem:lookup;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "", 1, 2, 5000, 60000, 2);
+        ManageLibros libros = new ManageLibros();
+        libros.openConnection(pool);
+        for (Libro l : new ManageLibros().getAllLibros()) {
+            libros.addLibro(new Libro(l.getId(), l.getTitulo(), l.getAutor(), l.getIsbn(), true));
+        }
+        ManageAlquileres manager = new ManageAlquileres(libros);
+        manager.openConnection(pool);
+        for (Alquiler a : new ManageAlquileres().getAllAlquileres()) {
+            manager.registrarAlquiler(a);
+        }
+        assertLookups(manager);
+
+        List<String> indexes = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             ResultSet rs = connection.getMetaData().getIndexInfo(null, null, "ALQUILERES", false, false)) {
+            while (rs.next()) {
+                indexes.add(rs.getString("INDEX_NAME").toLowerCase());
+            }
+        }
+        assertTrue(indexes.contains("idx_alquileres_socio_estado"), indexes.toString());
+        assertTrue(indexes.contains("idx_alquileres_libro_fecha"), indexes.toString());
+    }
+
+    private void assertLookups(ManageAlquileres manager) {
+        assertEquals(List.of("A001", "A004"), ids(manager.getAlquileresDelSocio("S001")));
+        assertEquals(List.of("A002"), ids(manager.getAlquileresDelSocio("S002")));
+        assertEquals(List.of("A004"), ids(manager.getAlquileresDelLibro("L001")));
+        assertEquals(List.of(), ids(manager.getAlquileresDelLibro("L404")));
+
+        Page<Alquiler> page = manager.getAlquileresDelSocio("S001", new PageRequest(1, null, 0));
+        assertEquals(List.of("A001"), ids(page.getItems()));
+        Page<Alquiler> rest = manager.getAlquileresDelSocio("S001", new PageRequest(1, page.getNext(), 0));
+        assertEquals(List.of("A004"), ids(rest.getItems()));
+        assertNull(rest.getNext());
+    }
+
+    private static List<String> ids(List<Alquiler> rows) {
+        List<String> ids = new ArrayList<>();
+        rows.forEach(a -> ids.add(a.getId()));
+        return ids;
+    }
+}
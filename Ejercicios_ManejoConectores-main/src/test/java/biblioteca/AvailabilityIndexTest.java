@@ -0,0 +1,64 @@
+package biblioteca;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import Conexion.ConnectionPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AvailabilityIndexTest {
+    private ConnectionPool pool;
+
+    @AfterEach
+    public void tearDown() {
+        if (pool != null) pool.close();
+    }
+
+    @Test
+    public void inMemoryIndexFollowsEveryWrite() {
+        ManageLibros libros = new ManageLibros();
+        assertRentalsMoveLibros(libros, new ManageAlquileres(libros));
+
+        libros.addLibro(new Libro("L006", "Rayuela", "Julio Cortázar", "978-8437604572", true));
+        libros.updateLibro("L004", new Libro("L004", "Ficciones", "Jorge Luis Borges", "978-8437607499", false));
+        libros.deleteLibro("L002");
+        assertEquals(List.of("L001", "L006"), ids(libros.getLibrosDisponibles()));
+        assertEquals(List.of("L003", "L004", "L005"), ids(libros.getLibrosAlquilados()));
+    }
+
+    @Test
+    public void databaseRentalsUpdateTheSharedLibrosManager() throws Exception {
+        pool = new ConnectionPool("jdbc:h2:mem:availability;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "", 1, 2, 5000, 60000, 2);
+        ManageLibros libros = new ManageLibros();
+        libros.openConnection(pool);
+        for (Libro l : new ManageLibros().getAllLibros()) {
+            libros.addLibro(l);
+        }
+        ManageAlquileres alquileres = new ManageAlquileres(libros);
+        alquileres.openConnection(pool);
+        assertTrue(libros.getLibroById("L004").isDisponible()); // warm the by-id cache
+        assertRentalsMoveLibros(libros, alquileres);
+    }
+
+    private void assertRentalsMoveLibros(ManageLibros libros, ManageAlquileres alquileres) {
+        assertTrue(alquileres.registrarAlquiler(new Alquiler("A100", "S001", "L004", "2025-03-01", null, "activo")));
+        assertEquals(List.of("L001", "L002"), ids(libros.getLibrosDisponibles()));
+        assertEquals(List.of("L003", "L004", "L005"), ids(libros.getLibrosAlquilados()));
+        assertEquals(false, libros.getLibroById("L004").isDisponible());
+
+        assertTrue(alquileres.devolverLibro("A100"));
+        assertEquals(List.of("L001", "L002", "L004"), ids(libros.getLibrosDisponibles()));
+        assertEquals(true, libros.getLibroById("L004").isDisponible());
+    }
+
+    private static List<String> ids(List<Libro> lista) {
+        List<String> ids = new ArrayList<>();
+        lista.forEach(l -> ids.add(l.getId()));
+        return ids;
+    }
+}
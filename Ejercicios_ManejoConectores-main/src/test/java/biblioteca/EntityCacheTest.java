@@ -0,0 +1,53 @@
+package biblioteca;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class EntityCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsedAndCountsHits() {
+        EntityCache<String> cache = new EntityCache<>(2, 60_000);
+        AtomicInteger loads = new AtomicInteger();
+        cache.getOrLoad("a", () -> "A" + loads.incrementAndGet());
+        cache.getOrLoad("b", () -> "B" + loads.incrementAndGet());
+        cache.getOrLoad("a", () -> "A" + loads.incrementAndGet()); // hit, "b" becomes eldest
+        cache.getOrLoad("c", () -> "C" + loads.incrementAndGet()); // evicts "b"
+        assertEquals("A1", cache.getOrLoad("a", () -> "reloaded"));
+        assertEquals("B4", cache.getOrLoad("b", () -> "B" + loads.incrementAndGet()));
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    public void expiredEntriesAreReloaded() throws Exception {
+        EntityCache<String> cache = new EntityCache<>(10, 1);
+        cache.getOrLoad("a", () -> "old");
+        Thread.sleep(5);
+        assertEquals("new", cache.getOrLoad("a", () -> "new"));
+    }
+
+    @Test
+    public void loadRacingWithInvalidationIsNotStored() {
+        EntityCache<String> cache = new EntityCache<>(10, 60_000);
+        String loaded = cache.getOrLoad("a", () -> {
+            cache.invalidate("a"); // a write lands while the row is being read
+            return "stale";
+        });
+        assertEquals("stale", loaded);
+        assertEquals(0, cache.size());
+        assertEquals("fresh", cache.getOrLoad("a", () -> "fresh"));
+    }
+
+    @Test
+    public void nullResultsAreNotCached() {
+        EntityCache<String> cache = new EntityCache<>(10, 60_000);
+        assertNull(cache.getOrLoad("x", () -> null));
+        assertEquals("now", cache.getOrLoad("x", () -> "now"));
+    }
+}
@@ -0,0 +1,103 @@
+package biblioteca;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MemoryStoreTest {
+
+    private static MemoryStore<Alquiler> store() {
+        MemoryStore<Alquiler> store = new MemoryStore<>(Alquiler::getId)
+                .withIndex("socio", Alquiler::getSocioId)
+                .withIndex("estado", Alquiler::getEstado);
+        store.insert(new Alquiler("A003", "S002", "L003", "2025-02-03", null, "activo"));
+        store.insert(new Alquiler("A001", "S001", "L002", "2025-02-01", null, "activo"));
+        store.insert(new Alquiler("A002", "S001", "L001", "2025-01-20", "2025-02-05", "devuelto"));
+        return store;
+    }
+
+    @Test
+    public void rejectsDuplicateIdsAndKeepsIdOrder() {
+        MemoryStore<Alquiler> store = store();
+        assertFalse(store.insert(new Alquiler("A001", "S009", "L009", "2025-03-01", null, "activo")));
+        assertEquals("S001", store.get("A001").getSocioId());
+        assertEquals(List.of("A001", "A002", "A003"), ids(store.snapshot()));
+    }
+
+    @Test
+    public void updatesMoveRowsBetweenIndexBuckets() {
+        MemoryStore<Alquiler> store = store();
+        store.update("A001", a -> new Alquiler(a.getId(), a.getSocioId(), a.getLibroId(),
+                a.getFechaAlquiler(), "2025-03-01", "devuelto"));
+        assertEquals(List.of("A003"), ids(store.find("estado", "activo")));
+        assertEquals(List.of("A001", "A002"), ids(store.find("estado", "devuelto")));
+
+        assertSame(store.get("A002"), store.remove("A002"));
+        assertEquals(List.of("A001"), ids(store.find("socio", "S001")));
+        assertEquals(List.of(), ids(store.find("socio", "S404")));
+        assertNull(store.update("A404", a -> a));
+    }
+
+    @Test
+    public void updateCanRenameUnlessTheNewIdIsTaken() {
+        MemoryStore<Alquiler> store = store();
+        assertNull(store.update("A001", a -> new Alquiler("A002", a.getSocioId(), a.getLibroId(),
+                a.getFechaAlquiler(), null, "activo")));
+        store.update("A001", a -> new Alquiler("A004", a.getSocioId(), a.getLibroId(),
+                a.getFechaAlquiler(), null, "activo"));
+        assertNull(store.get("A001"));
+        assertEquals(List.of("A002", "A004"), ids(store.find("socio", "S001")));
+    }
+
+    @Test
+    public void readersNeverMissARowBeingUpdated() throws Exception {
+        MemoryStore<Alquiler> store = store();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger misses = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                if (store.get("A001") == null) misses.incrementAndGet();
+                if (store.find("socio", "S001").stream().noneMatch(a -> a.getId().equals("A001"))) misses.incrementAndGet();
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 100_000; i++) {
+            String estado = i % 2 == 0 ? "devuelto" : "activo";
+            store.update("A001", a -> new Alquiler(a.getId(), a.getSocioId(), a.getLibroId(),
+                    a.getFechaAlquiler(), null, estado));
+        }
+        done.set(true);
+        reader.join();
+        assertEquals(0, misses.get());
+        assertEquals(List.of("A001", "A002"), ids(store.find("socio", "S001")));
+        assertEquals(List.of("A002"), ids(store.find("estado", "devuelto")));
+        assertEquals(List.of("A001", "A003"), ids(store.find("estado", "activo")));
+    }
+
+    @Test
+    public void pagesUseTheIndexOrder() {
+        MemoryStore<Alquiler> store = store();
+        Page<Alquiler> first = store.page("estado", "activo", new PageRequest(1, null, 0));
+        assertEquals(List.of("A001"), ids(first.getItems()));
+        assertEquals("A001", first.getNext());
+        Page<Alquiler> second = store.page("estado", "activo", new PageRequest(1, first.getNext(), 0));
+        assertEquals(List.of("A003"), ids(second.getItems()));
+        assertNull(second.getNext());
+        assertTrue(store.page(new PageRequest(5, "A003", 0)).getItems().isEmpty());
+    }
+
+    private static List<String> ids(List<Alquiler> rows) {
+        List<String> ids = new ArrayList<>();
+        rows.forEach(a -> ids.add(a.getId()));
+        return ids;
+    }
+}
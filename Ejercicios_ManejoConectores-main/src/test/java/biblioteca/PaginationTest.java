@@ -0,0 +1,61 @@
+package biblioteca;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import Conexion.ConnectionPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class PaginationTest {
+    private ConnectionPool pool;
+
+    @AfterEach
+    public void tearDown() {
+        if (pool != null) pool.close();
+    }
+
+    @Test
+    public void inMemoryKeysetPagesCoverTheWholeList() {
+        ManageLibros manager = new ManageLibros();
+        assertPagesCoverAll(manager);
+    }
+
+    @Test
+    public void databaseKeysetPagesMatchInMemorySemantics() throws Exception {
+        pool = new ConnectionPool("jdbc:h2:mem:pagination;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "", 1, 2, 5000, 60000, 2);
+        ManageLibros manager = new ManageLibros();
+        manager.openConnection(pool);
+        for (Libro l : new ManageLibros().getAllLibros()) {
+            manager.addLibro(l);
+        }
+        assertPagesCoverAll(manager);
+    }
+
+    private void assertPagesCoverAll(ManageLibros manager) {
+        List<String> seen = new ArrayList<>();
+        String after = null;
+        int pages = 0;
+        do {
+            Page<Libro> page = manager.getAllLibros(new PageRequest(2, after, 0));
+            page.getItems().forEach(l -> seen.add(l.getId()));
+            after = page.getNext();
+            pages++;
+        } while (after != null);
+        assertEquals(List.of("L001", "L002", "L003", "L004", "L005"), seen);
+        assertEquals(3, pages);
+
+        Page<Libro> offset = manager.getAllLibros(new PageRequest(2, null, 3));
+        assertEquals(2, offset.getItems().size());
+        assertEquals("L004", offset.getItems().get(0).getId());
+        assertNull(offset.getNext());
+
+        Page<Libro> disponibles = manager.getLibrosDisponibles(new PageRequest(2, "L001", 0));
+        assertEquals(List.of("L002", "L004"), List.of(disponibles.getItems().get(0).getId(), disponibles.getItems().get(1).getId()));
+        assertNull(disponibles.getNext());
+    }
+}
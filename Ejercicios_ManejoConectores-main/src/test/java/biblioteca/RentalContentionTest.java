@@ -0,0 +1,122 @@
+package biblioteca;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import Conexion.ConnectionPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Many threads renting and returning a handful of libros at once: every libro must end up
+ * rented by at most one active alquiler, and available exactly when it has none.
+ */
+public class RentalContentionTest {
+    private static final int THREADS = 16;
+    private static final int LIBROS = 4;
+    private static final int ROUNDS = 50;
+
+    private ConnectionPool pool;
+    private ExecutorService workers;
+
+    @AfterEach
+    public void tearDown() {
+        if (workers != null) workers.shutdownNow();
+        if (pool != null) pool.close();
+    }
+
+    @Test
+    public void inMemoryOnlyOneConcurrentRentalWins() throws Exception {
+        ManageLibros libros = new ManageLibros();
+        contend(libros, new ManageAlquileres(libros), "memory");
+    }
+
+    @Test
+    public void databaseOnlyOneConcurrentRentalWins() throws Exception {
+        pool = new ConnectionPool("jdbc:h2:mem:contention;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+                "sa", "", 2, 8, 5000, 60000, 2);
+        ManageLibros libros = new ManageLibros();
+        libros.openConnection(pool);
+        ManageAlquileres alquileres = new ManageAlquileres(libros);
+        alquileres.openConnection(pool);
+        contend(libros, alquileres, "database");
+    }
+
+    private void contend(ManageLibros libros, ManageAlquileres alquileres, String mode) throws Exception {
+        for (int i = 0; i < LIBROS; i++) {
+            libros.addLibro(new Libro("C" + i, "T", "A", "1", true));
+        }
+        workers = Executors.newFixedThreadPool(THREADS);
+        AtomicInteger rented = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int worker = t;
+            futures.add(workers.submit(() -> {
+                start.await();
+                for (int r = 0; r < ROUNDS; r++) {
+                    String id = "c" + worker + "-" + r;
+                    String libroId = "C" + ((worker + r) % LIBROS);
+                    if (alquileres.registrarAlquiler(new Alquiler(id, "S001", libroId, "2025-03-01", null, "activo"))) {
+                        rented.incrementAndGet();
+                        assertTrue(alquileres.devolverLibro(id), "return of " + id);
+                    } else {
+                        refused.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get(2, TimeUnit.MINUTES);
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("%s: %d rentals, %d refused, %d retries, %.0f attempts/s%n", mode, rented.get(),
+                refused.get(), alquileres.getReintentos(), THREADS * ROUNDS / seconds);
+
+        assertEquals(THREADS * ROUNDS, rented.get() + refused.get());
+        assertTrue(rented.get() >= LIBROS, "every libro was rented at least once");
+        for (int i = 0; i < LIBROS; i++) {
+            assertTrue(libros.getLibroById("C" + i).isDisponible(), "C" + i + " left rented");
+            for (Alquiler a : alquileres.getAlquileresDelLibro("C" + i)) {
+                assertEquals("devuelto", a.getEstado());
+            }
+        }
+
+        // one libro, everybody at once: exactly one winner
+        CountDownLatch race = new CountDownLatch(1);
+        AtomicInteger winners = new AtomicInteger();
+        futures.clear();
+        for (int t = 0; t < THREADS; t++) {
+            final int worker = t;
+            futures.add(workers.submit(() -> {
+                race.await();
+                if (alquileres.registrarAlquiler(new Alquiler("race" + worker, "S001", "C0", "2025-03-02", null, "activo"))) {
+                    winners.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        race.countDown();
+        for (Future<?> f : futures) {
+            f.get(1, TimeUnit.MINUTES);
+        }
+        assertEquals(1, winners.get());
+        assertFalse(libros.getLibroById("C0").isDisponible());
+        assertEquals(1, alquileres.getAlquileresDelLibro("C0").stream().filter(a -> "activo".equals(a.getEstado())).count());
+    }
+}
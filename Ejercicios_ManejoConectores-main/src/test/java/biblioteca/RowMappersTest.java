@@ -0,0 +1,54 @@
+package biblioteca;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import Conexion.ConnectionPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class RowMappersTest {
+    private ConnectionPool pool;
+
+    @AfterEach
+    public void tearDown() {
+        if (pool != null) pool.close();
+    }
+
+    @Test
+    public void everyEntityReadsBackWhatWasWritten() throws Exception {
+        pool = new ConnectionPool("jdbc:h2:mem:mappers;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "", 1, 2, 5000, 60000, 2);
+        ManageLibros libros = new ManageLibros();
+        libros.openConnection(pool);
+        ManageSocios socios = new ManageSocios();
+        socios.openConnection(pool);
+        ManageAlquileres alquileres = new ManageAlquileres(libros);
+        alquileres.openConnection(pool);
+        ManageEmpleados empleados = new ManageEmpleados();
+        empleados.openConnection(pool);
+
+        libros.insert(new Libro("LM1", "Titulo", "Autor", "978-1", false));
+        Libro libro = libros.findById("LM1");
+        assertEquals("Titulo", libro.getTitulo());
+        assertFalse(libro.isDisponible());
+
+        socios.insert(new Socio("SM1", "Ana", "Ruiz", "ana@x", "600", "2024-02-29"));
+        assertEquals("2024-02-29", socios.findById("SM1").getFechaRegistro());
+
+        alquileres.insert(new Alquiler("AM1", "SM1", "LM1", "2025-01-31", null, "devuelto"));
+        Alquiler alquiler = alquileres.findById("AM1");
+        assertEquals("2025-01-31", alquiler.getFechaAlquiler());
+        assertNull(alquiler.getFechaDevolucion());
+        assertEquals("devuelto", alquiler.getEstado());
+
+        empleados.insert(new Empleado("EM1", "Luis", "Gil", "luis@x", "bibliotecario", "1850.50", "2019-09-01"));
+        Empleado empleado = empleados.findById("EM1");
+        assertEquals("1850.50", empleado.getSalario());
+        assertEquals("2019-09-01", empleado.getFechaContratacion());
+
+        // the paged lists build one mapper per result set
+        assertEquals("2019-09-01", empleados.getAllEmpleados(PageRequest.ALL).getItems().get(0).getFechaContratacion());
+    }
+}
@@ -0,0 +1,53 @@
+package metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void bucketsAreCumulativeAndBoundsInclusive() {
+        Histogram h = new Histogram();
+        h.record(TimeUnit.MICROSECONDS.toNanos(50));
+        h.record(TimeUnit.MILLISECONDS.toNanos(1));
+        h.record(TimeUnit.MILLISECONDS.toNanos(3));
+        h.record(TimeUnit.SECONDS.toNanos(30));
+        assertEquals(4, h.getCount());
+
+        StringBuilder out = new StringBuilder();
+        h.write(out, "x_seconds", "route=\"/a\"");
+        String text = out.toString();
+        assertTrue(text.contains("x_seconds_bucket{route=\"/a\",le=\"0.0001\"} 1\n"), text);
+        assertTrue(text.contains("x_seconds_bucket{route=\"/a\",le=\"0.001\"} 2\n"), text);
+        assertTrue(text.contains("x_seconds_bucket{route=\"/a\",le=\"0.005\"} 3\n"), text);
+        assertTrue(text.contains("x_seconds_bucket{route=\"/a\",le=\"10\"} 3\n"), text);
+        assertTrue(text.contains("x_seconds_bucket{route=\"/a\",le=\"+Inf\"} 4\n"), text);
+        assertTrue(text.contains("x_seconds_count{route=\"/a\"} 4\n"), text);
+        assertTrue(text.contains("x_seconds_sum{route=\"/a\"} 30.004"), text);
+    }
+
+    @Test
+    public void byteHistogramsAreWrittenInBytes() {
+        Histogram h = Histogram.ofBytes();
+        h.record(64);
+        h.record(65);
+        h.record(100_000_000);
+        StringBuilder out = new StringBuilder();
+        h.write(out, "x_bytes", "");
+        String text = out.toString();
+        assertTrue(text.contains("x_bytes_bucket{le=\"64\"} 1\n"), text);
+        assertTrue(text.contains("x_bytes_bucket{le=\"256\"} 2\n"), text);
+        assertTrue(text.contains("x_bytes_bucket{le=\"16777216\"} 2\n"), text);
+        assertTrue(text.contains("x_bytes_bucket{le=\"+Inf\"} 3\n"), text);
+        assertTrue(text.contains("x_bytes_sum 100000129\n"), text);
+    }
+
+    @Test
+    public void queryShapeIsOneLine() {
+        assertEquals("SELECT a FROM t WHERE id = ?", Metrics.shape("  SELECT a\n   FROM t\tWHERE id = ?  "));
+    }
+}
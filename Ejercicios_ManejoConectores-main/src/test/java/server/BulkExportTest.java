@@ -0,0 +1,145 @@
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import Conexion.ConnectionPool;
+
+import biblioteca.Libro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BulkExportTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private HttpServer http;
+    private ServerExecutor serverExecutor;
+    private ConnectionPool pool;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String base;
+
+    @AfterEach
+    public void tearDown() {
+        if (http != null) http.stop(0);
+        if (serverExecutor != null) serverExecutor.shutdown();
+        if (pool != null) pool.close();
+        Compression.configure(Compression.DEFAULT_MIN_BYTES, Deflater.DEFAULT_COMPRESSION);
+        WebServer.connectManagers(null);
+    }
+
+    @Test
+    public void inMemoryExportStreamsEveryRow() throws Exception {
+        WebServer.connectManagers(null);
+        start();
+        exportAndCheck();
+    }
+
+    @Test
+    public void databaseExportStreamsFromACursor() throws Exception {
+        pool = new ConnectionPool("jdbc:h2:mem:export;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "", 1, 4, 5000, 60000, 2);
+        WebServer.connectManagers(pool);
+        start();
+        StringBuilder libros = new StringBuilder();
+        for (String id : new String[] { "L001", "L002", "L003", "L004", "L005" }) {
+            libros.append("{\"id\":\"").append(id).append("\",\"titulo\":\"T, ").append(id).append("\",\"autor\":\"A\",\"isbn\":\"1\",\"disponible\":true}\n");
+        }
+        post("/api/libros/bulk", libros.toString());
+        exportAndCheck();
+    }
+
+    @Test
+    public void failingExportsAreNeverSentAsComplete() throws Exception {
+        WebServer.ListStream<Libro> failing = (page, sink) -> {
+            for (int i = 0; i < 2000; i++) {
+                sink.accept(new Libro("F" + i, "Titulo " + i, "Autor", "978", true));
+            }
+            throw new IOException("cursor lost");
+        };
+        Router router = new Router()
+                .get("/export", new WebServer.ExportHandler<>("libros", Libro.class, failing, out -> false))
+                .get("/early", new WebServer.ExportHandler<>("libros", Libro.class, (page, sink) -> {
+                    throw new IOException("query failed");
+                }, out -> false));
+        http = HttpServer.create(new InetSocketAddress(0), 0);
+        http.createContext("/", router);
+        http.start();
+        base = "http://localhost:" + http.getAddress().getPort();
+
+        for (String format : new String[] { "csv", "ndjson" }) {
+            for (boolean gzip : new boolean[] { false, true }) {
+                assertThrows(IOException.class, () -> get("/export?format=" + format, gzip), format + " gzip=" + gzip);
+            }
+        }
+        // nothing was sent yet: an error status instead of an empty file
+        assertEquals(500, get("/early?format=csv", true).statusCode());
+    }
+
+    private void start() throws Exception {
+        // the sample tables are smaller than compression.minBytes
+        Compression.configure(0, Deflater.DEFAULT_COMPRESSION);
+        serverExecutor = ServerExecutor.newPool(4, 16);
+        http = WebServer.createServer(0, serverExecutor);
+        http.start();
+        base = "http://localhost:" + http.getAddress().getPort();
+    }
+
+    private void exportAndCheck() throws Exception {
+        HttpResponse<byte[]> ndjson = get("/api/libros/export", false);
+        assertEquals(200, ndjson.statusCode());
+        assertNull(ndjson.headers().firstValue("Content-Encoding").orElse(null));
+        String[] lines = new String(ndjson.body(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(5, lines.length);
+        assertEquals("L001", MAPPER.readTree(lines[0]).get("id").asText());
+        assertEquals("L005", MAPPER.readTree(lines[4]).get("id").asText());
+
+        HttpResponse<byte[]> csv = get("/api/libros/export?format=csv", true);
+        assertEquals("gzip", csv.headers().firstValue("Content-Encoding").orElse(null));
+        assertTrue(csv.headers().firstValue("Content-Type").orElse("").startsWith("text/csv"));
+        String text = gunzip(csv.body());
+        String[] rows = text.split("\n");
+        assertEquals(6, rows.length, text);
+        assertTrue(rows[0].startsWith("id,"), rows[0]);
+
+        // the CSV export is accepted by the bulk import as it is
+        WebServer.connectManagers(null);
+        HttpResponse<String> reimport = client.send(HttpRequest.newBuilder(URI.create(base + "/api/libros/bulk?format=csv"))
+                .POST(HttpRequest.BodyPublishers.ofString(text.replace("L00", "R00"))).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(5, MAPPER.readTree(reimport.body()).get("imported").asInt(), reimport.body());
+
+        assertEquals(400, get("/api/socios/export?format=xml", false).statusCode());
+    }
+
+    private void post(String path, String body) throws Exception {
+        client.send(HttpRequest.newBuilder(URI.create(base + path)).POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<byte[]> get(String path, boolean gzip) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path));
+        if (gzip) request.header("Accept-Encoding", "gzip");
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static String gunzip(byte[] body) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package server;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import Conexion.ConnectionPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BulkImportTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private HttpServer http;
+    private ServerExecutor serverExecutor;
+    private ConnectionPool pool;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String base;
+
+    @AfterEach
+    public void tearDown() {
+        if (http != null) http.stop(0);
+        if (serverExecutor != null) serverExecutor.shutdown();
+        if (pool != null) pool.close();
+        WebServer.connectManagers(null);
+    }
+
+    @Test
+    public void inMemoryImportReportsBadRows() throws Exception {
+        WebServer.connectManagers(null);
+        start();
+        importAndCheck();
+    }
+
+    @Test
+    public void databaseImportBatchesAndReplaysFailedChunks() throws Exception {
+        pool = new ConnectionPool("jdbc:h2:mem:bulk;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "", 1, 4, 5000, 60000, 2);
+        WebServer.connectManagers(pool);
+        start();
+        importAndCheck();
+    }
+
+    private void start() throws Exception {
+        serverExecutor = ServerExecutor.newPool(4, 16);
+        http = WebServer.createServer(0, serverExecutor);
+        http.start();
+        base = "http://localhost:" + http.getAddress().getPort();
+    }
+
+    private void importAndCheck() throws Exception {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            ndjson.append("{\"id\":\"B").append(i).append("\",\"titulo\":\"T").append(i).append("\",\"autor\":\"A\",\"isbn\":\"1\",\"disponible\":true}\n");
+        }
+        ndjson.append("{not json}\n");
+        ndjson.append("{\"titulo\":\"no id\"}\n");
+        ndjson.append("{\"id\":\"B3\",\"titulo\":\"again\",\"autor\":\"A\",\"isbn\":\"1\",\"disponible\":true}\n");
+        ndjson.append("null\n");
+        ndjson.append("{\"id\":\"B7\",\"titulo\":\"T7\",\"autor\":\"A\",\"isbn\":\"1\",\"disponible\":true}\n");
+
+        HttpResponse<String> res = post("/api/libros/bulk?batchSize=3", "application/x-ndjson", ndjson.toString());
+        assertEquals(207, res.statusCode(), res.body());
+        JsonNode result = MAPPER.readTree(res.body());
+        assertEquals(8, result.get("imported").asInt());
+        assertEquals(4, result.get("failed").asInt());
+        // parse errors are reported as they are read, duplicates when their batch is written
+        Map<Integer, String> errors = new TreeMap<>();
+        result.get("errors").forEach(e -> errors.put(e.get("line").asInt(), e.get("error").asText()));
+        assertEquals(List.of(8, 9, 10, 11), List.copyOf(errors.keySet()));
+        assertEquals("not an object", errors.get(11));
+        assertTrue(result.has("rowsPerSecond"));
+        assertEquals("T3", MAPPER.readTree(get("/api/libros/B3")).get("titulo").asText());
+
+        String csv = "id,nombre,apellido,email,telefono,fechaRegistro\n"
+                + "X1,Ana,\"Pérez, hija\",ana@x,1,2025-01-01\n"
+                + "X2,Luis,\"Gómez\nen dos líneas\",luis@x,2,2025-01-02\n"
+                + "X3,solo dos\n";
+        res = post("/api/socios/bulk", "text/csv", csv);
+        result = MAPPER.readTree(res.body());
+        assertEquals(2, result.get("imported").asInt(), res.body());
+        assertEquals(5, result.get("errors").get(0).get("line").asInt());
+        assertEquals("Pérez, hija", MAPPER.readTree(get("/api/socios/X1")).get("apellido").asText());
+        assertEquals("Gómez\nen dos líneas", MAPPER.readTree(get("/api/socios/X2")).get("apellido").asText());
+
+        res = post("/api/empleados/bulk?format=xml", "text/plain", "");
+        assertEquals(400, res.statusCode());
+    }
+
+    private HttpResponse<String> post(String path, String contentType, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + path))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(base + path)).build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
@@ -0,0 +1,139 @@
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import metrics.Metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompressionTest {
+    private HttpServer http;
+    private ServerExecutor serverExecutor;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String base;
+
+    @AfterEach
+    public void tearDown() {
+        if (http != null) http.stop(0);
+        if (serverExecutor != null) serverExecutor.shutdown();
+        WebServer.connectManagers(null);
+    }
+
+    @Test
+    public void deflatingStreamRoundTripsWithPooledDeflaters() throws IOException {
+        byte[] text = "{\"id\":\"L001\",\"titulo\":\"El Quijote\",\"disponible\":true}".repeat(2000).getBytes(StandardCharsets.UTF_8);
+        // the second pass of each coding runs on a Deflater returned to the pool
+        for (int i = 0; i < 2; i++) {
+            for (String encoding : new String[] { "gzip", "deflate" }) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (Compression.DeflatingStream deflating = new Compression.DeflatingStream(out, encoding)) {
+                    deflating.write(text, 0, 1000);
+                    deflating.flush();
+                    deflating.write(text, 1000, text.length - 1000);
+                }
+                assertTrue(out.size() * 10 < text.length, encoding + " " + out.size());
+                assertEquals(new String(text, StandardCharsets.UTF_8), inflate(out.toByteArray(), encoding));
+            }
+        }
+    }
+
+    @Test
+    public void largeListsAreCompressedWhenAccepted() throws Exception {
+        WebServer.connectManagers(null);
+        serverExecutor = ServerExecutor.newPool(2, 8);
+        http = WebServer.createServer(0, serverExecutor);
+        http.start();
+        base = "http://localhost:" + http.getAddress().getPort();
+        StringBuilder libros = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            libros.append("{\"id\":\"Z").append(i).append("\",\"titulo\":\"Titulo\",\"autor\":\"Autor\",\"isbn\":\"978\",\"disponible\":true}\n");
+        }
+        client.send(HttpRequest.newBuilder(URI.create(base + "/api/libros/bulk")).POST(HttpRequest.BodyPublishers.ofString(libros.toString())).build(),
+                HttpResponse.BodyHandlers.ofString());
+        long before = Metrics.COMPRESSION_IN.sum();
+
+        HttpResponse<byte[]> identity = get("/api/libros", null);
+        assertNull(identity.headers().firstValue("Content-Encoding").orElse(null));
+        String json = new String(identity.body(), StandardCharsets.UTF_8);
+        assertTrue(json.length() > Compression.DEFAULT_MIN_BYTES, json);
+
+        for (String encoding : new String[] { "gzip", "deflate" }) {
+            HttpResponse<byte[]> compressed = get("/api/libros", encoding);
+            assertEquals(encoding, compressed.headers().firstValue("Content-Encoding").orElse(null));
+            assertEquals("Accept, Accept-Encoding", compressed.headers().firstValue("Vary").orElse(null));
+            assertEquals(json, inflate(compressed.body(), encoding));
+        }
+
+        // one small object: below the threshold, sent as it is with its length
+        HttpResponse<byte[]> small = get("/api/libros/Z1", "gzip");
+        assertNull(small.headers().firstValue("Content-Encoding").orElse(null));
+        assertEquals(String.valueOf(small.body().length), small.headers().firstValue("Content-Length").orElse(null));
+
+        assertEquals(before + 2L * identity.body().length, Metrics.COMPRESSION_IN.sum());
+        String metrics = new String(get("/metrics", null).body(), StandardCharsets.UTF_8);
+        assertTrue(metrics.contains("http_response_compression_seconds_count "), metrics);
+        assertTrue(metrics.contains("http_response_compression_ratio "), metrics);
+    }
+
+    @Test
+    public void failingListsAreNeverSentAsComplete() throws Exception {
+        JsonCodec<String> codec = JsonCodec.of(String.class);
+        Router router = new Router()
+                .get("/early", (exchange, p) -> WebServer.writeList(exchange, codec, (page, sink) -> {
+                    sink.accept("one");
+                    throw new IOException("query failed");
+                }))
+                .get("/late", (exchange, p) -> WebServer.writeList(exchange, codec, (page, sink) -> {
+                    for (int i = 0; i < 1000; i++) {
+                        sink.accept("row " + i);
+                    }
+                    throw new IllegalStateException("cursor lost");
+                }));
+        http = HttpServer.create(new InetSocketAddress(0), 0);
+        http.createContext("/", router);
+        http.start();
+        base = "http://localhost:" + http.getAddress().getPort();
+
+        // still held back: the headers are unsent, so it becomes a 500
+        HttpResponse<byte[]> early = get("/early", null);
+        assertEquals(500, early.statusCode());
+        assertEquals("{\"error\":\"server error\"}", new String(early.body(), StandardCharsets.UTF_8));
+
+        // past the threshold the 200 is out: the body must end short, not as valid JSON
+        for (String encoding : new String[] { null, "gzip" }) {
+            assertThrows(IOException.class, () -> get("/late", encoding), String.valueOf(encoding));
+        }
+    }
+
+    private HttpResponse<byte[]> get(String path, String acceptEncoding) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path));
+        if (acceptEncoding != null) request.header("Accept-Encoding", acceptEncoding);
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static String inflate(byte[] body, String encoding) throws IOException {
+        InputStream raw = new ByteArrayInputStream(body);
+        try (InputStream in = encoding.equals("gzip") ? new GZIPInputStream(raw) : new InflaterInputStream(raw)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
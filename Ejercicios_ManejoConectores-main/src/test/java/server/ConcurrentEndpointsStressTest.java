@@ -0,0 +1,267 @@
+package server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import Conexion.ConnectionPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hammers every API context from many client threads against a multi-threaded server,
+ * once with the in-memory storage and once against an embedded database, and checks
+ * that no request fails and no statement, cursor or pooled connection is left open.
+ */
+public class ConcurrentEndpointsStressTest {
+    private static final int CLIENTS = 16;
+    private static final int ROUNDS = 10;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private HttpServer http;
+    private ServerExecutor serverExecutor;
+    private ConnectionPool pool;
+
+    @AfterEach
+    public void tearDown() {
+        if (http != null) http.stop(0);
+        if (serverExecutor != null) serverExecutor.shutdown();
+        if (pool != null) pool.close();
+        WebServer.connectManagers(null);
+    }
+
+    @Test
+    public void inMemoryModeSurvivesConcurrentClients() throws Exception {
+        WebServer.connectManagers(null);
+        hammer();
+    }
+
+    @Test
+    public void databaseModeSurvivesConcurrentClientsWithoutLeaks() throws Exception {
+        CountingDriver.register();
+        String url = CountingDriver.PREFIX + "h2:mem:stress;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+        pool = new ConnectionPool(url, "sa", "", 2, 8, 10000, 60000, 2);
+        WebServer.connectManagers(pool);
+
+        hammer();
+
+        assertEquals(0, pool.getActiveCount(), "connections not returned to the pool");
+        // the pool keeps prepared statements open on purpose, until its connections close
+        pool.close();
+        assertEquals(0, CountingDriver.OPEN_STATEMENTS.get(), "statements left open");
+        assertEquals(0, CountingDriver.OPEN_RESULT_SETS.get(), "result sets left open");
+    }
+
+    private void hammer() throws Exception {
+        serverExecutor = ServerExecutor.newPool(CLIENTS, 256);
+        http = WebServer.createServer(0, serverExecutor);
+        http.start();
+        String base = "http://localhost:" + http.getAddress().getPort();
+        HttpClient client = HttpClient.newHttpClient();
+
+        int[] sizesBefore = listSizes(client, base);
+
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < CLIENTS; t++) {
+            final int worker = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int r = 0; r < ROUNDS; r++) {
+                        roundTrip(client, base, "t" + worker + "-" + r, failures);
+                    }
+                } catch (Exception e) {
+                    failures.add(e.toString());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join(TimeUnit.MINUTES.toMillis(2));
+
+        assertTrue(failures.isEmpty(), "failures: " + failures);
+        int[] sizesAfter = listSizes(client, base);
+        for (int i = 0; i < sizesBefore.length; i++) {
+            assertEquals(sizesBefore[i], sizesAfter[i], "list size changed for entity #" + i);
+        }
+    }
+
+    /** Creates, reads, updates and deletes one row per entity, checking every answer. */
+    private void roundTrip(HttpClient client, String base, String id, ConcurrentLinkedQueue<String> failures) throws Exception {
+        String libroId = "r" + id;
+        String[][] entities = {
+                { "students", "{\"id\":\"" + id + "\",\"name\":\"N\",\"surname\":\"S\",\"age\":20}",
+                        "{\"id\":\"" + id + "\",\"name\":\"N2\",\"surname\":\"S\",\"age\":21}" },
+                { "socios", "{\"id\":\"" + id + "\",\"nombre\":\"N\",\"apellido\":\"A\",\"email\":\"e@x\",\"telefono\":\"1\",\"fechaRegistro\":\"2025-01-15\"}",
+                        "{\"nombre\":\"N2\",\"apellido\":\"A\",\"email\":\"e@x\",\"telefono\":\"1\"}" },
+                { "libros", "{\"id\":\"" + id + "\",\"titulo\":\"T\",\"autor\":\"A\",\"isbn\":\"1\",\"disponible\":true}",
+                        "{\"titulo\":\"T2\",\"autor\":\"A\",\"isbn\":\"1\",\"disponible\":true}" },
+                { "empleados", "{\"id\":\"" + id + "\",\"nombre\":\"N\",\"apellido\":\"A\",\"email\":\"e@x\",\"puesto\":\"P\",\"salario\":\"1000\",\"fechaContratacion\":\"2024-01-10\"}",
+                        "{\"nombre\":\"N2\",\"apellido\":\"A\",\"email\":\"e@x\",\"puesto\":\"P\",\"salario\":\"1100\"}" },
+                { "alquileres", "{\"id\":\"" + id + "\",\"socioId\":\"S001\",\"libroId\":\"" + libroId + "\",\"fechaAlquiler\":\"2025-03-01\",\"estado\":\"activo\"}",
+                        "{\"accion\":\"devolver\"}" },
+        };
+        // every round rents its own libro, two rounds renting the same one would conflict
+        String libroUrl = base + "/api/libros/" + libroId;
+        expect(failures, send(client, "POST", base + "/api/libros",
+                "{\"id\":\"" + libroId + "\",\"titulo\":\"T\",\"autor\":\"A\",\"isbn\":\"1\",\"disponible\":true}"), 201, "POST libro to rent");
+        for (String[] e : entities) {
+            String coll = base + "/api/" + e[0];
+            String item = coll + "/" + id;
+            expect(failures, send(client, "POST", coll, e[1]), 201, "POST " + e[0]);
+            HttpResponse<String> get = send(client, "GET", item, null);
+            expect(failures, get, 200, "GET " + e[0]);
+            if (get.statusCode() == 200 && !id.equals(MAPPER.readTree(get.body()).get("id").asText())) {
+                failures.add("GET " + e[0] + " returned another row: " + get.body());
+            }
+            expect(failures, send(client, "GET", coll, null), 200, "GET list " + e[0]);
+            expect(failures, send(client, "PUT", item, e[2]), 200, "PUT " + e[0]);
+            expect(failures, send(client, "DELETE", item, null), 200, "DELETE " + e[0]);
+        }
+        expect(failures, send(client, "DELETE", libroUrl, null), 200, "DELETE rented libro");
+        expect(failures, send(client, "GET", base + "/api/libros/disponibles", null), 200, "GET disponibles");
+        expect(failures, send(client, "GET", base + "/api/alquileres/activos", null), 200, "GET activos");
+        expect(failures, send(client, "GET", base + "/api/socios/S001/alquileres?limit=5", null), 200, "GET alquileres del socio");
+        expect(failures, send(client, "GET", base + "/api/libros/L002/alquileres", null), 200, "GET alquileres del libro");
+    }
+
+    private int[] listSizes(HttpClient client, String base) throws Exception {
+        String[] colls = { "students", "socios", "libros", "empleados", "alquileres" };
+        int[] sizes = new int[colls.length];
+        for (int i = 0; i < colls.length; i++) {
+            JsonNode list = MAPPER.readTree(send(client, "GET", base + "/api/" + colls[i], null).body());
+            sizes[i] = list.size();
+        }
+        return sizes;
+    }
+
+    private static void expect(ConcurrentLinkedQueue<String> failures, HttpResponse<String> res, int status, String what) {
+        if (res.statusCode() != status) failures.add(what + " -> " + res.statusCode() + " " + res.body());
+    }
+
+    private static HttpResponse<String> send(HttpClient client, String method, String url, String body) throws Exception {
+        HttpRequest.BodyPublisher publisher = body == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(body);
+        HttpRequest req = HttpRequest.newBuilder(URI.create(url)).method(method, publisher).build();
+        return client.send(req, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Wraps the H2 driver to count statements and result sets that are opened but
+     * not yet closed, so leaks show up as a non-zero counter after the run.
+     */
+    static class CountingDriver implements Driver {
+        static final String PREFIX = "jdbc:counting:";
+        static final AtomicInteger OPEN_STATEMENTS = new AtomicInteger();
+        static final AtomicInteger OPEN_RESULT_SETS = new AtomicInteger();
+        private static boolean registered = false;
+
+        static synchronized void register() throws SQLException {
+            if (!registered) {
+                DriverManager.registerDriver(new CountingDriver());
+                registered = true;
+            }
+        }
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) return null;
+            Connection real = DriverManager.getConnection("jdbc:" + url.substring(PREFIX.length()), info);
+            return wrap(Connection.class, real, null);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T wrap(Class<T> type, T real, AtomicInteger counter) {
+            if (counter != null) counter.incrementAndGet();
+            boolean[] closed = { false };
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, m, args) -> {
+                if (m.getName().equals("close") && counter != null) {
+                    synchronized (closed) {
+                        if (!closed[0]) {
+                            closed[0] = true;
+                            counter.decrementAndGet();
+                        }
+                    }
+                }
+                Object result;
+                try {
+                    result = m.invoke(real, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (result instanceof ResultSet) {
+                    return wrap(ResultSet.class, (ResultSet) result, OPEN_RESULT_SETS);
+                }
+                if (result instanceof PreparedStatement) {
+                    return wrap(PreparedStatement.class, (PreparedStatement) result, OPEN_STATEMENTS);
+                }
+                if (result instanceof Statement) {
+                    return wrap(Statement.class, (Statement) result, OPEN_STATEMENTS);
+                }
+                return result;
+            });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url != null && url.startsWith(PREFIX);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
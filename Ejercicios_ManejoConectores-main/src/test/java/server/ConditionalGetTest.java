@@ -0,0 +1,101 @@
+package server;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import Conexion.ConnectionPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConditionalGetTest {
+    private HttpServer http;
+    private ServerExecutor serverExecutor;
+    private ConnectionPool pool;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String base;
+
+    @AfterEach
+    public void tearDown() {
+        if (http != null) http.stop(0);
+        if (serverExecutor != null) serverExecutor.shutdown();
+        if (pool != null) pool.close();
+        WebServer.connectManagers(null);
+    }
+
+    @Test
+    public void inMemoryListsAnswer304UntilTheTableChanges() throws Exception {
+        WebServer.connectManagers(null);
+        start();
+        rentingChangesBothTables();
+    }
+
+    @Test
+    public void databaseListsAnswer304UntilTheTableChanges() throws Exception {
+        pool = new ConnectionPool("jdbc:h2:mem:etags;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "", 1, 4, 5000, 60000, 2);
+        WebServer.connectManagers(pool);
+        start();
+        send("POST", "/api/socios", "{\"id\":\"S001\",\"nombre\":\"n\",\"apellido\":\"a\",\"email\":\"e\",\"telefono\":\"1\",\"fechaRegistro\":\"2025-01-01\"}");
+        rentingChangesBothTables();
+    }
+
+    private void rentingChangesBothTables() throws Exception {
+        send("POST", "/api/libros", "{\"id\":\"L010\",\"titulo\":\"t\",\"autor\":\"a\",\"isbn\":\"1\",\"disponible\":true}");
+        HttpResponse<String> libros = get("/api/libros/disponibles", null);
+        assertEquals(200, libros.statusCode());
+        assertEquals("no-cache", libros.headers().firstValue("Cache-Control").orElse(null));
+        String librosTag = libros.headers().firstValue("ETag").orElse("");
+        assertTrue(librosTag.startsWith("W/\""), librosTag);
+
+        HttpResponse<String> cached = get("/api/libros/disponibles", librosTag);
+        assertEquals(304, cached.statusCode());
+        assertEquals("", cached.body());
+        assertEquals(librosTag, cached.headers().firstValue("ETag").orElse(null));
+        // by-id reads share the table's tag
+        assertEquals(304, get("/api/libros/L010", librosTag).statusCode());
+
+        String alquileresTag = get("/api/alquileres/activos", null).headers().firstValue("ETag").orElse("");
+        assertEquals(304, get("/api/alquileres/activos", alquileresTag).statusCode());
+        String sociosTag = get("/api/socios", null).headers().firstValue("ETag").orElse("");
+
+        send("POST", "/api/alquileres", "{\"id\":\"AX1\",\"socioId\":\"S001\",\"libroId\":\"L010\",\"fechaAlquiler\":\"2025-03-01\",\"estado\":\"activo\"}");
+
+        HttpResponse<String> changed = get("/api/libros/disponibles", librosTag);
+        assertEquals(200, changed.statusCode());
+        assertTrue(!changed.body().contains("\"L010\""), changed.body());
+        assertNotEquals(librosTag, changed.headers().firstValue("ETag").orElse(null));
+        assertEquals(200, get("/api/alquileres/activos", alquileresTag).statusCode());
+        assertEquals(304, get("/api/socios", sociosTag).statusCode());
+
+        String activosTag = get("/api/alquileres/activos", null).headers().firstValue("ETag").orElse("");
+        send("PUT", "/api/alquileres/AX1", "{\"accion\":\"devolver\"}");
+        assertEquals(200, get("/api/alquileres/activos", activosTag).statusCode());
+    }
+
+    private void start() throws Exception {
+        serverExecutor = ServerExecutor.newPool(4, 16);
+        http = WebServer.createServer(0, serverExecutor);
+        http.start();
+        base = "http://localhost:" + http.getAddress().getPort();
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path));
+        if (ifNoneMatch != null) request.header("If-None-Match", ifNoneMatch);
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void send(String method, String path, String body) throws Exception {
+        HttpResponse<String> res = client.send(HttpRequest.newBuilder(URI.create(base + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+        assertTrue(res.statusCode() < 300, method + " " + path + " " + res.statusCode() + " " + res.body());
+    }
+}
@@ -0,0 +1,173 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EventFeedTest {
+    private HttpServer http;
+    private ServerExecutor serverExecutor;
+    private EventFeed feed;
+
+    @AfterEach
+    public void tearDown() {
+        if (http != null) http.stop(0);
+        if (serverExecutor != null) serverExecutor.shutdown();
+        if (feed != null) feed.close();
+        WebServer.connectManagers(null);
+    }
+
+    @Test
+    public void rentingIsPushedToConnectedClients() throws Exception {
+        WebServer.connectManagers(null);
+        serverExecutor = ServerExecutor.newPool(4, 16);
+        http = WebServer.createServer(0, serverExecutor);
+        http.start();
+        String base = "http://localhost:" + http.getAddress().getPort();
+        HttpClient client = HttpClient.newHttpClient();
+
+        HttpResponse<Stream<String>> events = client.send(HttpRequest.newBuilder(URI.create(base + "/api/events")).build(),
+                HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, events.statusCode());
+        assertEquals("text/event-stream;charset=utf-8", events.headers().firstValue("Content-Type").orElse(null));
+
+        send(client, base + "/api/libros", "{\"id\":\"L020\",\"titulo\":\"t\",\"autor\":\"a\",\"isbn\":\"1\",\"disponible\":true}");
+        send(client, base + "/api/alquileres", "{\"id\":\"AE1\",\"socioId\":\"S001\",\"libroId\":\"L020\",\"fechaAlquiler\":\"2025-03-01\",\"estado\":\"activo\"}");
+
+        Iterator<String> lines = events.body().iterator();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            boolean disponibilidad = false;
+            while (true) {
+                String line = lines.next();
+                if (line.equals("event: libro.disponibilidad")) {
+                    assertEquals("data: {\"id\":\"L020\",\"disponible\":false}", lines.next());
+                    disponibilidad = true;
+                } else if (line.equals("event: alquiler.registrado")) {
+                    assertTrue(lines.next().startsWith("data: {\"id\":\"AE1\",\"socioId\":\"S001\",\"libroId\":\"L020\""));
+                    break;
+                }
+            }
+            assertTrue(disponibilidad);
+        });
+        events.body().close();
+    }
+
+    @Test
+    public void reconnectingClientsGetWhatTheyMissed() throws Exception {
+        feed = new EventFeed(4, 16, 60);
+        Recorder first = new Recorder();
+        feed.subscribe(first, -1);
+        for (int i = 1; i <= 3; i++) feed.publish("alquiler.eliminado", Map.of("id", "A" + i));
+        waitFor(() -> first.count("event: ") == 3);
+        String text = first.text();
+        long firstId = Long.parseLong(text.substring(text.indexOf("id: ") + 4, text.indexOf('\n', text.indexOf("id: "))));
+
+        Recorder resumed = new Recorder();
+        feed.subscribe(resumed, firstId);
+        waitFor(() -> resumed.count("event: ") == 2);
+        assertFalse(resumed.text().contains("\"A1\""), resumed.text());
+        assertTrue(resumed.text().contains("id: " + (firstId + 2) + "\n"), resumed.text());
+
+        // fell out of the ring, or from before a restart
+        for (int i = 4; i <= 8; i++) feed.publish("alquiler.eliminado", Map.of("id", "A" + i));
+        Recorder stale = new Recorder();
+        feed.subscribe(stale, firstId);
+        waitFor(() -> stale.count("event: ") == 1);
+        assertTrue(stale.text().contains("event: reset\n"), stale.text());
+        Recorder unknown = new Recorder();
+        feed.subscribe(unknown, 42);
+        waitFor(() -> unknown.count("event: ") == 1);
+        assertTrue(unknown.text().contains("event: reset\n"), unknown.text());
+    }
+
+    @Test
+    public void slowClientsAreDroppedWithoutHoldingUpTheOthers() throws Exception {
+        feed = new EventFeed(16, 2, 60);
+        CountDownLatch unblock = new CountDownLatch(1);
+        OutputStream stalled = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+        EventFeed.Subscriber slow = feed.subscribe(stalled, -1);
+        Recorder fast = new Recorder();
+        feed.subscribe(fast, -1);
+
+        for (int i = 0; i < 10; i++) {
+            feed.publish("libro.disponibilidad", Map.of("id", "L" + i, "disponible", true));
+            // the fast client keeps up
+            int expected = i + 1;
+            waitFor(() -> fast.count("event: ") == expected);
+        }
+        assertTrue(slow.isClosed());
+        assertEquals(1, feed.getDropped());
+        assertEquals(1, feed.getClients());
+        unblock.countDown();
+    }
+
+    private static void send(HttpClient client, String url, String body) throws Exception {
+        HttpResponse<String> res = client.send(HttpRequest.newBuilder(URI.create(url))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+        assertTrue(res.statusCode() < 300, url + " " + res.statusCode() + " " + res.body());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    /** A client that reads everything at once. */
+    private static final class Recorder extends OutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            bytes.write(b, off, len);
+        }
+
+        synchronized String text() {
+            return bytes.toString(StandardCharsets.UTF_8);
+        }
+
+        int count(String prefix) {
+            String text = text();
+            int n = 0;
+            for (int i = text.indexOf(prefix); i >= 0; i = text.indexOf(prefix, i + 1)) n++;
+            return n;
+        }
+    }
+}
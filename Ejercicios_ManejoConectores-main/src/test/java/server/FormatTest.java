@@ -0,0 +1,97 @@
+package server;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import biblioteca.Libro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FormatTest {
+    private static final String CBOR = "application/cbor";
+    private static final String SMILE = "application/x-jackson-smile";
+
+    private HttpServer http;
+    private ServerExecutor serverExecutor;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String base;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        WebServer.connectManagers(null);
+        serverExecutor = ServerExecutor.newPool(4, 16);
+        http = WebServer.createServer(0, serverExecutor);
+        http.start();
+        base = "http://localhost:" + http.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        http.stop(0);
+        serverExecutor.shutdown();
+        WebServer.connectManagers(null);
+    }
+
+    @Test
+    public void listsAndRowsAreSentInTheAcceptedFormat() throws Exception {
+        HttpResponse<byte[]> json = get("/api/libros", null);
+        HttpResponse<byte[]> cbor = get("/api/libros", CBOR);
+        assertEquals(CBOR, cbor.headers().firstValue("Content-Type").orElse(null));
+        assertTrue(cbor.headers().firstValue("Vary").orElse("").contains("Accept"));
+        List<Libro> libros = new CBORMapper().readValue(cbor.body(), new TypeReference<List<Libro>>() { });
+        List<Libro> same = WebServer.MAPPER.readValue(json.body(), new TypeReference<List<Libro>>() { });
+        assertEquals(same.size(), libros.size());
+        assertEquals(same.get(0).getTitulo(), libros.get(0).getTitulo());
+        assertTrue(cbor.body().length < json.body().length, cbor.body().length + " vs " + json.body().length);
+
+        String id = same.get(0).getId();
+        HttpResponse<byte[]> smile = get("/api/libros/" + id, SMILE);
+        assertEquals(SMILE, smile.headers().firstValue("Content-Type").orElse(null));
+        assertEquals(id, new SmileMapper().readValue(smile.body(), Libro.class).getId());
+
+        // JSON when preferred, for wildcards and for types the API does not have
+        assertEquals("application/json;charset=utf-8", contentType(get("/api/libros/" + id, CBOR + ";q=0.5, application/json")));
+        assertEquals("application/json;charset=utf-8", contentType(get("/api/libros/" + id, "*/*")));
+        assertEquals("application/json;charset=utf-8", contentType(get("/api/libros/" + id, "application/xml")));
+        assertEquals(CBOR, contentType(get("/api/libros/" + id, "application/json;q=0.8, " + CBOR)));
+    }
+
+    @Test
+    public void binaryBodiesAreReadByContentType() throws Exception {
+        byte[] body = new SmileMapper().writeValueAsBytes(new Libro("L900", "Binario", "Autor", "978-9", true));
+        HttpResponse<byte[]> created = client.send(HttpRequest.newBuilder(URI.create(base + "/api/libros"))
+                .header("Content-Type", SMILE).header("Accept", CBOR)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body)).build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(201, created.statusCode());
+        JsonNode status = new CBORMapper().readTree(created.body());
+        assertEquals("created", status.get("status").asText());
+
+        assertEquals("Binario", WebServer.MAPPER.readValue(get("/api/libros/L900", null).body(), Libro.class).getTitulo());
+    }
+
+    private HttpResponse<byte[]> get(String path, String accept) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path));
+        if (accept != null) request.header("Accept", accept);
+        HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode(), path);
+        return response;
+    }
+
+    private static String contentType(HttpResponse<?> response) {
+        return response.headers().firstValue("Content-Type").orElse(null);
+    }
+}
@@ -0,0 +1,51 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoadTestTest {
+
+    @AfterEach
+    public void tearDown() {
+        WebServer.connectManagers(null);
+    }
+
+    @Test
+    public void parsesOptionsAndMix() {
+        LoadTest.Options o = LoadTest.Options.parse(new String[] { "--rate=250", "--duration=2", "--mix=get:3,delete:1" });
+        assertEquals(250, o.rate);
+        assertEquals(2, o.durationSec);
+        assertEquals(3, o.get);
+        assertEquals(0, o.post);
+        assertEquals(1, o.delete);
+        assertThrows(IllegalArgumentException.class, () -> LoadTest.Options.parse(new String[] { "--rate=0" }));
+        assertThrows(IllegalArgumentException.class, () -> LoadTest.Options.parse(new String[] { "--mix=patch:1" }));
+        assertThrows(IllegalArgumentException.class, () -> LoadTest.Options.parse(new String[] { "rate" }));
+    }
+
+    @Test
+    public void drivesAnInMemoryServerAndReportsPercentiles() throws Exception {
+        LoadTest.Options o = LoadTest.Options.parse(new String[] {
+                "--rate=100", "--duration=2", "--warmup=0", "--mix=get:50,post:20,put:20,delete:10" });
+        LoadTest test = LoadTest.run(o);
+
+        assertEquals(200, test.getSent() + test.getDropped());
+        assertEquals(test.getSent(), test.getCompleted());
+        assertEquals(0, test.getErrors());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        test.print(new PrintStream(out, true, StandardCharsets.UTF_8));
+        String report = out.toString(StandardCharsets.UTF_8);
+        assertTrue(report.contains("p99.9"), report);
+        assertTrue(report.contains("POST /api/libros"), report);
+        assertTrue(report.contains("Errors: none"), report);
+    }
+}
@@ -0,0 +1,95 @@
+package server;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import Conexion.ConnectionPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MetricsTest {
+    private HttpServer http;
+    private ServerExecutor serverExecutor;
+    private ConnectionPool pool;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String base;
+
+    @AfterEach
+    public void tearDown() {
+        if (http != null) http.stop(0);
+        if (serverExecutor != null) serverExecutor.shutdown();
+        if (pool != null) pool.close();
+        WebServer.connectManagers(null);
+    }
+
+    @Test
+    public void inMemoryRoutesAreCounted() throws Exception {
+        WebServer.connectManagers(null);
+        start();
+        double before = value(metrics(), "http_requests_total{route=\"GET /api/libros/{id}\",code=\"200\"}");
+        get("/api/libros/L001");
+        get("/api/libros/L001");
+        get("/api/libros/NOPE");
+        client.send(HttpRequest.newBuilder(URI.create(base + "/api/libros"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"id\":\"M1\",\"titulo\":\"t\",\"autor\":\"a\",\"isbn\":\"1\",\"disponible\":true}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        String text = metrics();
+        assertEquals(before + 2, value(text, "http_requests_total{route=\"GET /api/libros/{id}\",code=\"200\"}"), text);
+        assertTrue(value(text, "http_requests_total{route=\"GET /api/libros/{id}\",code=\"404\"}") >= 1, text);
+        assertTrue(value(text, "http_request_duration_seconds_count{route=\"GET /api/libros/{id}\"}") >= 3, text);
+        assertTrue(value(text, "http_request_duration_seconds_bucket{route=\"GET /api/libros/{id}\",le=\"+Inf\"}") >= 3, text);
+        assertTrue(value(text, "http_request_bytes_total{route=\"POST /api/libros\"}") >= 60, text);
+        assertTrue(value(text, "http_response_bytes_total{route=\"GET /api/libros/{id}\"}") > 0, text);
+        assertEquals(1, value(text, "biblioteca_storage_mode{mode=\"memory\"}"));
+    }
+
+    @Test
+    public void databaseQueriesArePerShape() throws Exception {
+        pool = new ConnectionPool("jdbc:h2:mem:metrics;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "", 1, 4, 5000, 60000, 2);
+        WebServer.connectManagers(pool);
+        start();
+        get("/api/libros");
+        get("/api/socios");
+
+        String text = metrics();
+        assertEquals(1, value(text, "biblioteca_storage_mode{mode=\"database\"}"));
+        assertTrue(value(text, "db_pool_wait_seconds_count") >= 2, text);
+        assertTrue(text.contains("db_query_duration_seconds_count{query=\"SELECT"), text);
+        assertTrue(value(text, "db_pool_connections{state=\"idle\"}") >= 1, text);
+    }
+
+    private void start() throws Exception {
+        serverExecutor = ServerExecutor.newPool(4, 16);
+        http = WebServer.createServer(0, serverExecutor);
+        http.start();
+        base = "http://localhost:" + http.getAddress().getPort();
+    }
+
+    private String get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(base + path)).build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private String metrics() throws Exception {
+        HttpResponse<String> res = client.send(HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, res.statusCode());
+        assertTrue(res.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        return res.body();
+    }
+
+    private static double value(String text, String series) {
+        Matcher m = Pattern.compile("^" + Pattern.quote(series) + " (\\S+)$", Pattern.MULTILINE).matcher(text);
+        return m.find() ? Double.parseDouble(m.group(1)) : 0;
+    }
+}
@@ -0,0 +1,89 @@
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestBodyTest {
+    private HttpServer http;
+    private ServerExecutor serverExecutor;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String base;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        WebServer.connectManagers(null);
+        RequestBody.configure(1024);
+        serverExecutor = ServerExecutor.newPool(4, 16);
+        http = WebServer.createServer(0, serverExecutor);
+        http.start();
+        base = "http://localhost:" + http.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        http.stop(0);
+        serverExecutor.shutdown();
+        RequestBody.configure(RequestBody.DEFAULT_MAX_BYTES);
+        WebServer.connectManagers(null);
+    }
+
+    @Test
+    public void bodiesPastTheLimitAre413() throws Exception {
+        String big = libro("LB1", "x".repeat(2000));
+        HttpResponse<String> declared = send("POST", "/api/libros", HttpRequest.BodyPublishers.ofString(big));
+        assertEquals(413, declared.statusCode(), declared.body());
+
+        // chunked: no length up front, it fails once the limit has been read
+        byte[] bytes = big.getBytes(StandardCharsets.UTF_8);
+        HttpResponse<String> chunked = send("POST", "/api/libros",
+                HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(bytes)));
+        assertEquals(413, chunked.statusCode(), chunked.body());
+
+        assertEquals(201, send("POST", "/api/libros", HttpRequest.BodyPublishers.ofString(libro("LB2", "corto"))).statusCode());
+        assertEquals(404, send("GET", "/api/libros/LB1", HttpRequest.BodyPublishers.noBody()).statusCode());
+
+        String metrics = send("GET", "/metrics", HttpRequest.BodyPublishers.noBody()).body();
+        assertTrue(metrics.contains("http_requests_total{route=\"POST /api/libros\",code=\"413\"} 2"), metrics);
+        assertTrue(metrics.contains("http_request_body_bytes_bucket{route=\"POST /api/libros\",le=\"64\"} 0\n"), metrics);
+        assertTrue(metrics.contains("http_request_body_bytes_bucket{route=\"POST /api/libros\",le=\"256\"} 1\n"), metrics);
+    }
+
+    @Test
+    public void commandFieldIsFoundWhereverItIs() throws Exception {
+        assertEquals(200, put("A001", "{\"accion\":\"devolver\"}").statusCode());
+        assertEquals(200, put("A002", "{\"nota\":{\"a\":[1,2,{\"accion\":\"no\"}]},\"accion\":\"devolver\",\"resto\":\"\"}").statusCode());
+        assertEquals("devuelto", WebServer.MAPPER.readTree(send("GET", "/api/alquileres/A002",
+                HttpRequest.BodyPublishers.noBody()).body()).get("estado").asText());
+
+        assertEquals(400, put("A003", "{}").statusCode());
+        assertEquals(400, put("A003", "{\"accion\":{\"devolver\":true}}").statusCode());
+        assertEquals(400, put("A003", "[\"devolver\"]").statusCode());
+        assertEquals(413, put("A003", "{\"accion\":\"" + "x".repeat(2000) + "\"}").statusCode());
+    }
+
+    private static String libro(String id, String titulo) {
+        return "{\"id\":\"" + id + "\",\"titulo\":\"" + titulo + "\",\"autor\":\"a\",\"isbn\":\"1\",\"disponible\":true}";
+    }
+
+    private HttpResponse<String> put(String id, String body) throws Exception {
+        return send("PUT", "/api/alquileres/" + id, HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private HttpResponse<String> send(String method, String path, HttpRequest.BodyPublisher body) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(base + path)).method(method, body).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
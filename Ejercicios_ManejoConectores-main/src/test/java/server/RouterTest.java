@@ -0,0 +1,96 @@
+package server;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class RouterTest {
+    private static final Router.Route NOOP = (exchange, params) -> { };
+
+    private HttpServer http;
+    private ServerExecutor serverExecutor;
+
+    @AfterEach
+    public void tearDown() {
+        if (http != null) http.stop(0);
+        if (serverExecutor != null) serverExecutor.shutdown();
+        WebServer.connectManagers(null);
+    }
+
+    @Test
+    public void capturesParametersInTemplateOrder() {
+        Router router = new Router();
+        router.get("/api/socios/{id}/alquileres/{alquiler}", NOOP);
+        Router.Match match = router.match("GET", "/api/socios/S001/alquileres/A9");
+        assertArrayEquals(new String[] { "S001", "A9" }, match.params);
+        // a trailing slash names the same resource
+        assertArrayEquals(new String[] { "S001", "A9" }, router.match("GET", "/api/socios/S001/alquileres/A9/").params);
+    }
+
+    @Test
+    public void literalSegmentsWinAndParamsBacktrack() {
+        Router.Route byId = (exchange, params) -> { };
+        Router.Route disponibles = (exchange, params) -> { };
+        Router.Route alquileres = (exchange, params) -> { };
+        Router router = new Router()
+                .get("/api/libros/{id}", byId)
+                .get("/api/libros/disponibles", disponibles)
+                .get("/api/libros/{id}/alquileres", alquileres);
+
+        assertSame(disponibles, router.match("GET", "/api/libros/disponibles").endpoint.route);
+        assertSame(byId, router.match("GET", "/api/libros/L001").endpoint.route);
+        // "disponibles" has no children, so the walk backs out and takes it as an id
+        Router.Match match = router.match("GET", "/api/libros/disponibles/alquileres");
+        assertSame(alquileres, match.endpoint.route);
+        assertArrayEquals(new String[] { "disponibles" }, match.params);
+    }
+
+    @Test
+    public void unknownMethodListsTheAllowedOnes() {
+        Router router = new Router()
+                .get("/api/libros/{id}", NOOP)
+                .put("/api/libros/{id}", NOOP)
+                .delete("/api/libros/{id}", NOOP);
+        Router.Match match = router.match("POST", "/api/libros/L001");
+        assertNull(match.endpoint);
+        assertEquals("GET, PUT, DELETE", match.allow);
+
+        Router.Match missing = router.match("GET", "/api/libros");
+        assertNull(missing.endpoint);
+        assertNull(missing.allow);
+    }
+
+    @Test
+    public void serverAnswers404And405() throws Exception {
+        WebServer.connectManagers(null);
+        serverExecutor = ServerExecutor.newPool(2, 8);
+        http = WebServer.createServer(0, serverExecutor);
+        http.start();
+        String base = "http://localhost:" + http.getAddress().getPort();
+        HttpClient client = HttpClient.newHttpClient();
+
+        HttpResponse<String> res = client.send(HttpRequest.newBuilder(URI.create(base + "/api/libros/disponibles"))
+                .DELETE().build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, res.statusCode());
+        assertEquals("GET", res.headers().firstValue("Allow").orElse(null));
+
+        res = client.send(HttpRequest.newBuilder(URI.create(base + "/api/nope/1")).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(404, res.statusCode());
+
+        res = client.send(HttpRequest.newBuilder(URI.create(base + "/api/socios/S001/alquileres")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, res.statusCode());
+        assertEquals('[', res.body().charAt(0));
+    }
+}
@@ -0,0 +1,123 @@
+package server;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpServer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ServerExecutorTest {
+
+    @Test
+    public void saturatedPoolAnswers503AndCountsRejections() throws Exception {
+        ServerExecutor executor = ServerExecutor.newPool(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        HttpServer http = HttpServer.create(new InetSocketAddress(0), 0);
+        HttpContext ctx = http.createContext("/slow", exchange -> {
+            busy.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        ctx.getFilters().add(executor.overloadFilter());
+        http.setExecutor(executor.executor());
+        http.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            URI uri = URI.create("http://localhost:" + http.getAddress().getPort() + "/slow");
+            List<CompletableFuture<HttpResponse<Void>>> calls = new ArrayList<>();
+            calls.add(client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding()));
+            assertTrue(busy.await(5, TimeUnit.SECONDS));
+            // one more fits in the queue, the rest must be rejected
+            for (int i = 0; i < 4; i++) {
+                calls.add(client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding()));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (executor.getRejectedCount() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            release.countDown();
+
+            int ok = 0, unavailable = 0;
+            for (CompletableFuture<HttpResponse<Void>> call : calls) {
+                int status = call.get(10, TimeUnit.SECONDS).statusCode();
+                if (status == 204) ok++;
+                if (status == 503) unavailable++;
+            }
+            assertEquals(2, ok);
+            assertEquals(3, unavailable);
+            assertEquals(3, executor.getRejectedCount());
+        } finally {
+            http.stop(0);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void aSlowClientDoesNotStallTheRejections() throws Exception {
+        ServerExecutor executor = ServerExecutor.newPool(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        HttpServer http = HttpServer.create(new InetSocketAddress(0), 0);
+        HttpContext ctx = http.createContext("/slow", exchange -> {
+            busy.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        ctx.getFilters().add(executor.overloadFilter());
+        http.setExecutor(executor.executor());
+        http.start();
+        int port = http.getAddress().getPort();
+        HttpClient client = HttpClient.newHttpClient();
+        URI uri = URI.create("http://localhost:" + port + "/slow");
+        List<CompletableFuture<HttpResponse<Void>>> calls = new ArrayList<>();
+        try (Socket slow = new Socket("localhost", port)) {
+            calls.add(client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding()));
+            assertTrue(busy.await(5, TimeUnit.SECONDS));
+            calls.add(client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding()));
+            Thread.sleep(200);
+            // worker and queue are taken: this exchange is rejected, then stalls reading headers
+            // that never end
+            slow.getOutputStream().write("GET /slow HTTP/1.1\r\nHost: x\r\n".getBytes(StandardCharsets.US_ASCII));
+            slow.getOutputStream().flush();
+            Thread.sleep(200);
+
+            // on the dispatcher it would block every other connection; on the reserve it does not
+            HttpResponse<Void> rejected = client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding())
+                    .get(5, TimeUnit.SECONDS);
+            assertEquals(503, rejected.statusCode());
+        } finally {
+            release.countDown();
+            for (CompletableFuture<HttpResponse<Void>> call : calls) {
+                assertEquals(204, call.get(10, TimeUnit.SECONDS).statusCode());
+            }
+            http.stop(0);
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StaticAssetsTest {
+    private static final String SCRIPT = "console.log('biblioteca');\n".repeat(50);
+
+    @TempDir
+    Path dir;
+
+    private HttpServer http;
+    private StaticAssets assets;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String base;
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        if (http != null) http.stop(0);
+        if (assets != null) assets.close();
+    }
+
+    @Test
+    public void servesFromMemoryWithEtagsAndGzip() throws Exception {
+        Path web = Files.createDirectory(dir.resolve("web"));
+        Files.writeString(web.resolve("index.html"), "<html></html>");
+        Files.writeString(web.resolve("app.js"), SCRIPT);
+        start(web);
+
+        HttpResponse<byte[]> plain = get("/app.js", null, null);
+        assertEquals(200, plain.statusCode());
+        assertEquals(SCRIPT, new String(plain.body(), StandardCharsets.UTF_8));
+        assertEquals("public, max-age=60", plain.headers().firstValue("Cache-Control").orElse(null));
+        assertTrue(plain.headers().firstValue("Content-Type").orElse("").startsWith("application/javascript"));
+        String etag = plain.headers().firstValue("ETag").orElse("");
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""), etag);
+
+        HttpResponse<byte[]> gzipped = get("/app.js", "gzip, deflate", null);
+        assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").orElse(null));
+        assertEquals(SCRIPT, gunzip(gzipped.body()));
+        String gzipTag = gzipped.headers().firstValue("ETag").orElse("");
+        assertNotEquals(etag, gzipTag);
+
+        HttpResponse<byte[]> revalidated = get("/app.js", null, "W/\"other\", " + etag);
+        assertEquals(304, revalidated.statusCode());
+        assertEquals(0, revalidated.body().length);
+        assertEquals(200, get("/app.js", null, gzipTag).statusCode());
+
+        // the file is not read again
+        Files.writeString(web.resolve("app.js"), "changed");
+        assertEquals(SCRIPT, new String(get("/app.js", null, null).body(), StandardCharsets.UTF_8));
+
+        HttpResponse<byte[]> index = get("/", "gzip", null);
+        assertEquals("no-cache", index.headers().firstValue("Cache-Control").orElse(null));
+        // too small to gain anything from gzip
+        assertNull(index.headers().firstValue("Content-Encoding").orElse(null));
+        assertEquals("<html></html>", new String(index.body(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void pathsCannotLeaveTheWebRoot() throws Exception {
+        Path web = Files.createDirectory(dir.resolve("web"));
+        Files.writeString(web.resolve("style.css"), "body{}");
+        Files.writeString(dir.resolve("secret.txt"), "secret");
+        start(web);
+
+        assertEquals("style.css", assets.key("/css/../style.css"));
+        assertNull(assets.key("/../secret.txt"));
+        assertNull(assets.key("/.."));
+        assertEquals(404, get("/%2e%2e/secret.txt", null, null).statusCode());
+        assertEquals(404, get("/missing.js", null, null).statusCode());
+        assertEquals(200, get("/style.css", null, null).statusCode());
+    }
+
+    @Test
+    public void watcherReloadsChangedFiles() throws Exception {
+        Path web = Files.createDirectory(dir.resolve("web"));
+        Files.writeString(web.resolve("app.js"), "v1");
+        start(web);
+        assets.watch();
+
+        Files.writeString(web.resolve("app.js"), "v2");
+        Files.writeString(web.resolve("new.css"), "p{}");
+        long deadline = System.currentTimeMillis() + 15_000;
+        while (System.currentTimeMillis() < deadline
+                && !(body("/app.js").equals("v2") && get("/new.css", null, null).statusCode() == 200)) {
+            Thread.sleep(100);
+        }
+        assertEquals("v2", body("/app.js"));
+        assertEquals("p{}", body("/new.css"));
+    }
+
+    private void start(Path web) throws IOException {
+        assets = new StaticAssets(web, 60);
+        http = HttpServer.create(new InetSocketAddress(0), 0);
+        http.createContext("/", assets);
+        http.start();
+        base = "http://localhost:" + http.getAddress().getPort();
+    }
+
+    private String body(String path) throws Exception {
+        return new String(get(path, null, null).body(), StandardCharsets.UTF_8);
+    }
+
+    private HttpResponse<byte[]> get(String path, String acceptEncoding, String ifNoneMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path));
+        if (acceptEncoding != null) request.header("Accept-Encoding", acceptEncoding);
+        if (ifNoneMatch != null) request.header("If-None-Match", ifNoneMatch);
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static String gunzip(byte[] body) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -31,6 +31,11 @@ CREATE TABLE libros (
   disponible BOOLEAN DEFAULT TRUE
 );
 
+-- Índices parciales para /api/libros/disponibles y /api/libros/alquilados: cada uno solo
+-- contiene las filas de su estado y ya viene ordenado por id para la paginación
+CREATE INDEX idx_libros_disponibles ON libros (id) WHERE disponible = TRUE;
+CREATE INDEX idx_libros_alquilados ON libros (id) WHERE disponible = FALSE;
+
 -- Tabla de Alquileres
 CREATE TABLE alquileres (
   id VARCHAR(36) PRIMARY KEY,
@@ -43,6 +48,10 @@ CREATE TABLE alquileres (
   FOREIGN KEY (libro_id) REFERENCES libros(id)
 );
 
+-- Índices compuestos para /api/socios/{id}/alquileres y /api/libros/{id}/alquileres
+CREATE INDEX idx_alquileres_socio_estado ON alquileres (socio_id, estado);
+CREATE INDEX idx_alquileres_libro_fecha ON alquileres (libro_id, fecha_alquiler);
+
 -- Tabla de Empleados
 CREATE TABLE empleados (
   id VARCHAR(36) PRIMARY KEY,